@@ -1,8 +1,14 @@
 package de.fhg.iais.roberta.connection;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,14 +19,22 @@ import de.fhg.iais.roberta.util.PropertyHelper;
 public abstract class AbstractConnector<T extends IRobot> implements IConnector<T> {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractConnector.class);
 
-    private final Collection<IOraListener<State>> listeners = new ArrayList<>();
+    protected static final long WAIT_FOR_SIGNAL = -1L;
+
+    // Wait while there is nothing to push, otherwise a connector without a push request would step continuously
+    private static final long NO_PUSH_REQUEST_WAIT_TIME = 1000L;
+
+    private static final boolean PUSH_MULTIPLEXING = Boolean.parseBoolean(PropertyHelper.getInstance().getProperty("pushMultiplexing"));
+
+    private final StateDispatcher dispatcher = new StateDispatcher(this);
 
     private final String defaultServerAddress;
     protected final ServerCommunicator serverCommunicator;
 
     protected JSONObject brickData = null;
+    private PushRequestEncoder requestEncoder = null;
 
-    protected State state = State.DISCOVER; // First state when program starts
+    protected volatile State state = State.DISCOVER; // First state when program starts
     protected String token = "";
     protected T robot;
 
@@ -32,34 +46,253 @@ public abstract class AbstractConnector<T extends IRobot> implements IConnector<
         this.robot = robot;
     }
 
-    private boolean running = false;
+    private volatile boolean running = false;
+
+    // Counts the state changes, the loop sleeps until it changes
+    private final Object signal = new Object();
+    private long stateVersion = 0L;
+    private Runnable parkedStep = null;
 
     @Override
     public final void run() {
         this.running = true;
         LOG.info("Starting {} connector with server address {}", this.robot.getPrettyName(), this.defaultServerAddress);
         while ( this.running ) {
+            long version = this.getStateVersion();
             this.runLoopBody();
 
-            // Needed, otherwise the state change does not get through
             try {
-                Thread.sleep(1L);
+                this.awaitSignal(version, this.getWaitTime(this.state));
             } catch ( InterruptedException e ) {
                 LOG.error("Interrupt triggered inside run: {}", e.getMessage());
             }
         }
     }
 
+    @Override
+    public final CompletableFuture<Void> runAsync(Executor executor, ScheduledExecutorService scheduler) {
+        this.running = true;
+        LOG.info("Starting {} connector asynchronously with server address {}", this.robot.getPrettyName(), this.defaultServerAddress);
+        CompletableFuture<Void> finished = new CompletableFuture<>();
+        executor.execute(() -> this.step(executor, scheduler, finished));
+        return finished;
+    }
+
+    /**
+     * Runs one step of the state machine. While waiting for commands the push request is sent asynchronously and the next step is scheduled when the
+     * response arrives, every other state runs the loop body and parks until the next step is due, see {@link #getWaitTime(State)}. If there is nothing
+     * to push the step is repeated after a short wait.
+     */
+    private void step(Executor executor, ScheduledExecutorService scheduler, CompletableFuture<Void> finished) {
+        if ( !this.running ) {
+            finished.complete(null);
+            return;
+        }
+        try {
+            long version = this.getStateVersion();
+            byte[] pushRequest = (this.state == State.WAIT_FOR_CMD) ? this.createPushRequest() : null;
+            if ( pushRequest == null ) {
+                if ( this.state != State.WAIT_FOR_CMD ) {
+                    this.runLoopBody();
+                }
+                long waitTime = this.getWaitTime(this.state);
+                if ( (this.state == State.WAIT_FOR_CMD) && (waitTime == 0L) ) {
+                    waitTime = NO_PUSH_REQUEST_WAIT_TIME;
+                }
+                this.park(version, waitTime, () -> executor.execute(() -> this.step(executor, scheduler, finished)), scheduler);
+            } else {
+                this.pushAsync(pushRequest).whenCompleteAsync((response, e) -> {
+                    try {
+                        if ( e == null ) {
+                            this.handlePush(response);
+                        } else {
+                            this.handlePushError((e instanceof CompletionException) ? e.getCause() : e);
+                        }
+                    } catch ( RuntimeException re ) {
+                        // the future of this callback is dropped, without this the connector would hang silently
+                        LOG.error("Handling the push response failed", re);
+                        finished.completeExceptionally(re);
+                        return;
+                    }
+                    this.step(executor, scheduler, finished);
+                }, executor);
+            }
+        } catch ( RuntimeException e ) {
+            LOG.error("Connector step failed: {}", e.getMessage());
+            finished.completeExceptionally(e);
+        }
+    }
+
+    private CompletableFuture<JSONObject> pushAsync(byte[] pushRequest) {
+        if ( PUSH_MULTIPLEXING ) {
+            return PushMultiplexer.forServer(this.serverCommunicator.getServerAddress()).push(this.token, pushRequest);
+        }
+        return this.serverCommunicator.pushRequestAsync(pushRequest);
+    }
+
+    /**
+     * Returns how long the loop waits in the given state before the loop body runs again. The wait ends early if the state changes, or the connector is
+     * connected or closed. By default only the push requests run continuously, they are held by the server. Connectors that have to poll the robot
+     * override this.
+     *
+     * @param state the current state
+     * @return the time to wait in milliseconds, 0 to run again immediately, {@link #WAIT_FOR_SIGNAL} to wait until the state changes
+     */
+    protected long getWaitTime(State state) {
+        return (state == State.WAIT_FOR_CMD) ? 0L : WAIT_FOR_SIGNAL;
+    }
+
+    private long getStateVersion() {
+        synchronized ( this.signal ) {
+            return this.stateVersion;
+        }
+    }
+
+    private void awaitSignal(long version, long waitTime) throws InterruptedException {
+        if ( waitTime == 0L ) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + waitTime;
+        synchronized ( this.signal ) {
+            while ( this.running && (this.stateVersion == version) ) {
+                if ( waitTime < 0L ) {
+                    this.signal.wait();
+                } else {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if ( remaining <= 0L ) {
+                        return;
+                    }
+                    this.signal.wait(remaining);
+                }
+            }
+        }
+    }
+
+    private void park(long version, long waitTime, Runnable nextStep, ScheduledExecutorService scheduler) {
+        synchronized ( this.signal ) {
+            if ( this.running && (this.stateVersion == version) && (waitTime != 0L) ) {
+                this.parkedStep = nextStep;
+                if ( waitTime > 0L ) {
+                    scheduler.schedule(() -> this.unpark(nextStep), waitTime, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+        nextStep.run();
+    }
+
+    private void unpark(Runnable nextStep) {
+        synchronized ( this.signal ) {
+            if ( this.parkedStep != nextStep ) {
+                return;
+            }
+            this.parkedStep = null;
+        }
+        nextStep.run();
+    }
+
+    /**
+     * Wakes up the loop, it runs the loop body for the current state.
+     */
+    private void signal() {
+        Runnable nextStep;
+        synchronized ( this.signal ) {
+            this.stateVersion++;
+            this.signal.notifyAll();
+            nextStep = this.parkedStep;
+            this.parkedStep = null;
+        }
+        if ( nextStep != null ) {
+            nextStep.run();
+        }
+    }
+
     protected abstract void runLoopBody();
 
+    /**
+     * Sends the push request and handles the response of the server. Used by the loop body while waiting for commands.
+     */
+    protected final void push() {
+        byte[] pushRequest = this.createPushRequest();
+        if ( pushRequest == null ) {
+            return;
+        }
+        try {
+            this.handlePush(this.serverCommunicator.pushRequest(pushRequest));
+        } catch ( IOException e ) {
+            this.handlePushError(e);
+        }
+    }
+
+    private void handlePush(JSONObject response) {
+        try {
+            this.handlePushResponse(response);
+        } catch ( JSONException e ) {
+            this.handlePushError(e);
+        }
+    }
+
+    /**
+     * Creates the request that is pushed to the server while waiting for commands.
+     *
+     * @return the UTF-8 encoded push request, null if nothing should be pushed, e.g. because the robot could not be reached
+     */
+    protected byte[] createPushRequest() {
+        return null;
+    }
+
+    /**
+     * Returns the encoder for the requests of the current registration. The device info is only queried and rendered again when the token changed or
+     * the encoder was invalidated.
+     *
+     * @param deviceInfo supplies the device info of the robot
+     * @return the encoder for the current token
+     */
+    protected final PushRequestEncoder getRequestEncoder(Supplier<JSONObject> deviceInfo) {
+        PushRequestEncoder encoder = this.requestEncoder;
+        if ( (encoder == null) || !encoder.getToken().equals(this.token) ) {
+            encoder = new PushRequestEncoder(deviceInfo.get(), this.token);
+            this.requestEncoder = encoder;
+        }
+        return encoder;
+    }
+
+    /**
+     * Renders the requests again on the next push, needed if the device info changed.
+     */
+    protected final void invalidateRequestEncoder() {
+        this.requestEncoder = null;
+    }
+
+    /**
+     * Handles the command the server responded with while waiting for commands.
+     *
+     * @param response the response of the server
+     */
+    protected void handlePushResponse(JSONObject response) {
+        // nothing to do by default
+    }
+
+    /**
+     * Handles a failed push request.
+     *
+     * @param e the reason the push failed
+     */
+    protected void handlePushError(Throwable e) {
+        LOG.error("WAIT_FOR_CMD {}", e.getMessage());
+        this.reset(State.ERROR_HTTP);
+    }
+
     @Override
     public void connect() {
         this.state = State.CONNECT_BUTTON_IS_PRESSED;
+        this.signal();
     }
 
     @Override
     public void close() {
         this.running = false;
+        this.signal();
     }
 
     @Override
@@ -102,21 +335,27 @@ public abstract class AbstractConnector<T extends IRobot> implements IConnector<
     }
 
     @Override
-    public void registerListener(IOraListener<State> listener) {
-        this.listeners.add(listener);
+    public void registerListener(IOraListener<StateEvent> listener) {
+        this.dispatcher.registerListener(listener);
     }
 
     @Override
-    public void unregisterListener(IOraListener<State> listener) {
-        this.listeners.remove(listener);
+    public void unregisterListener(IOraListener<StateEvent> listener) {
+        this.dispatcher.unregisterListener(listener);
     }
 
-    @Override
-    public void fire(State newState) {
+    /**
+     * Changes the state of the connector and notifies the listeners.
+     *
+     * @param newState the new state
+     * @param details optional details for the listeners, e.g. the error output of a failed upload
+     */
+    protected void fire(State newState, String... details) {
+        State oldState = this.state;
         this.state = newState;
-        for ( IOraListener<State> listener : this.listeners ) {
-            listener.update(newState);
+        this.dispatcher.dispatch(newState, details);
+        if ( newState != oldState ) {
+            this.signal();
         }
     }
 }
-
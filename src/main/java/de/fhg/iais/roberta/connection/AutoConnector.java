@@ -16,4 +16,9 @@ public class AutoConnector extends AbstractConnector<IRobot> {
             this.fire(State.WAIT_FOR_CMD);
         }
     }
+
+    @Override
+    protected long getWaitTime(State state) {
+        return WAIT_FOR_SIGNAL; // nothing to push, wait until the connector is closed
+    }
 }
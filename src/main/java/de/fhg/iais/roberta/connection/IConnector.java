@@ -1,11 +1,10 @@
 package de.fhg.iais.roberta.connection;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 
-import de.fhg.iais.roberta.util.IOraListenable;
+import de.fhg.iais.roberta.util.IOraListener;
 
 /**
  * Defines a set of states, keywords and methods for handling the USB connection of a robot to the Open Roberta server. This interface is intended to be
@@ -13,7 +12,7 @@ import de.fhg.iais.roberta.util.IOraListenable;
  *
  * @author dpyka
  */
-public interface IConnector<T extends IRobot> extends IOraListenable<IConnector.State> {
+public interface IConnector<T extends IRobot> {
 
     enum State {
         DISCOVER,
@@ -37,27 +36,7 @@ public interface IConnector<T extends IRobot> extends IOraListenable<IConnector.
         ERROR_MISSING_PASSWORD,
         ERROR_PYTHON_REQUIRE,
         ERROR_STOP_PROGRAM_CALLED,
-        TOKEN_TIMEOUT;
-
-        private List<String> additionalInfo = new ArrayList<>();
-
-        /**
-         * Optional info that may be needed by users of the State enum.
-         * @param additionalInfo a variable number of strings to be added
-         * @return the State object for chaining
-         */
-        public State setAdditionalInfo(String... additionalInfo) {
-            this.additionalInfo = Collections.unmodifiableList(Arrays.asList(additionalInfo));
-            return this;
-        }
-
-        /**
-         * Returns all additional info. May be empty.
-         * @return an unmodifiable list of additional info
-         */
-        public List<String> getAdditionalInfo() {
-            return additionalInfo;
-        }
+        TOKEN_TIMEOUT
     }
 
     String KEY_TOKEN = "token";
@@ -80,6 +59,16 @@ public interface IConnector<T extends IRobot> extends IOraListenable<IConnector.
      */
     void run();
 
+    /**
+     * Runs this connector without a dedicated thread.
+     * Push requests are sent asynchronously and the state machine continues in their completion callbacks, all other steps run on the executor.
+     *
+     * @param executor the executor the steps of the connector are run on, steps may block on the robot or the server
+     * @param scheduler the scheduler used to wait between steps, it only hands the next step over to the executor
+     * @return a future that is completed when the connector is closed
+     */
+    CompletableFuture<Void> runAsync(Executor executor, ScheduledExecutorService scheduler);
+
     /**
      * Tell the connector to collect necessary data from the robot and initialise a registration to Open Roberta.
      */
@@ -117,4 +106,18 @@ public interface IConnector<T extends IRobot> extends IOraListenable<IConnector.
      * If gui fields are empty but advanced options is checked, use the default server address.
      */
     void resetToDefaultServerAddress();
+
+    /**
+     * Registers a listener for the state changes of this connector. Can be called from any thread.
+     *
+     * @param listener the listener that should be added
+     */
+    void registerListener(IOraListener<StateEvent> listener);
+
+    /**
+     * Unregisters a listener for the state changes of this connector. Can be called from any thread.
+     *
+     * @param listener the listener that should be removed
+     */
+    void unregisterListener(IOraListener<StateEvent> listener);
 }
@@ -12,4 +12,22 @@ public interface IDetector {
      * @return a list of the available robots
      */
     List<IRobot> detectRobots();
+
+    /**
+     * Returns the longest time between two detections while the detected robots do not change.
+     *
+     * @return the interval in milliseconds
+     */
+    default long getMaxScanInterval() {
+        return 8000L;
+    }
+
+    /**
+     * Registers a listener that is called when the robots of this detector may have changed, e.g. because a USB device was plugged in. Detectors that
+     * can only notice changes by detecting again ignore it.
+     *
+     * @param listener the listener, called on the thread that noticed the change
+     */
+    default void addChangeListener(Runnable listener) {
+    }
 }
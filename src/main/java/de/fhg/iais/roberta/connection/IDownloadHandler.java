@@ -0,0 +1,23 @@
+package de.fhg.iais.roberta.connection;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Consumes a downloaded file while it is still arriving from the server, see
+ * {@link ServerCommunicator#downloadProgramToCache(org.json.JSONObject, de.fhg.iais.roberta.util.ProgramCache.Program, IDownloadHandler)}.
+ * Can mostly be handled by a lambda.
+ * @param <T> the type of the result of the handler
+ */
+@FunctionalInterface
+public interface IDownloadHandler<T> {
+    /**
+     * Handles the content of the download. The stream is only valid during this call and is closed afterwards.
+     * @param content the content of the file, read directly from the connection
+     * @param contentLength the length of the content in bytes, or a negative number if the server did not send it
+     * @param fileName the name of the file sent by the server, may be null
+     * @return the result of the handler
+     * @throws IOException if the content could not be read or handled
+     */
+    T handle(InputStream content, long contentLength, String fileName) throws IOException;
+}
@@ -0,0 +1,162 @@
+package de.fhg.iais.roberta.connection;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import de.fhg.iais.roberta.util.ExecutionHelper;
+
+/**
+ * Bundles the push requests of all connectors that talk to the same server into one exchange. The requests are sent together as
+ * <code>{"requests":[...]}</code> to the multi push address, the server holds the exchange like a single push request and answers with
+ * <code>{"responses":[...]}</code>, one response per token. The responses are handed back to the connectors by their token, requests the server did
+ * not answer are sent again with the next exchange. At most {@link #MAX_EXCHANGES} exchanges are held by the server at the same time, no matter how
+ * many robots are registered.
+ */
+public final class PushMultiplexer {
+    private static final Logger LOG = LoggerFactory.getLogger(PushMultiplexer.class);
+
+    static final String KEY_REQUESTS = "requests";
+    static final String KEY_RESPONSES = "responses";
+
+    private static final int MAX_EXCHANGES = 2;
+    private static final long GATHER_DELAY = 20L;
+
+    private static final Map<String, PushMultiplexer> MULTIPLEXERS = new ConcurrentHashMap<>();
+
+    private final ServerCommunicator serverCommunicator;
+    private final ScheduledExecutorService scheduler;
+    private final long gatherDelay;
+
+    // Guarded by this
+    private final Map<String, PendingPush> pending = new LinkedHashMap<>();
+    private int exchanges = 0;
+    private boolean dispatchScheduled = false;
+
+    PushMultiplexer(ServerCommunicator serverCommunicator, ScheduledExecutorService scheduler, long gatherDelay) {
+        this.serverCommunicator = serverCommunicator;
+        this.scheduler = scheduler;
+        this.gatherDelay = gatherDelay;
+    }
+
+    /**
+     * Returns the multiplexer shared by all connectors of the server.
+     *
+     * @param serverAddress the address of the server, e.g. lab.open-roberta.org:443
+     * @return the multiplexer for the server
+     */
+    public static PushMultiplexer forServer(String serverAddress) {
+        return MULTIPLEXERS.computeIfAbsent(serverAddress,
+            address -> new PushMultiplexer(new ServerCommunicator(address), ExecutionHelper.getInstance().getScheduler(), GATHER_DELAY));
+    }
+
+    /**
+     * Adds the push request to the next exchange. Requests arriving shortly after each other are sent together.
+     *
+     * @param token the token of the connector, identifies the response of the request
+     * @param request the UTF-8 encoded push request, see {@link PushRequestEncoder}
+     * @return a future for the response of the server to this request
+     */
+    public CompletableFuture<JSONObject> push(String token, byte[] request) {
+        PendingPush push = new PendingPush(request);
+        PendingPush replaced;
+        synchronized ( this ) {
+            replaced = this.pending.put(token, push);
+            this.scheduleDispatch();
+        }
+        if ( replaced != null ) {
+            replaced.response.completeExceptionally(new IOException("Push request was replaced by a newer one"));
+        }
+        return push.response;
+    }
+
+    private synchronized void scheduleDispatch() {
+        if ( !this.dispatchScheduled && !this.pending.isEmpty() && (this.exchanges < MAX_EXCHANGES) ) {
+            this.dispatchScheduled = true;
+            this.scheduler.schedule(this::dispatch, this.gatherDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void dispatch() {
+        Map<String, PendingPush> batch;
+        synchronized ( this ) {
+            this.dispatchScheduled = false;
+            batch = new LinkedHashMap<>(this.pending);
+            this.pending.clear();
+            this.exchanges++;
+        }
+        LOG.debug("Sending {} push requests in one exchange", batch.size());
+        this.serverCommunicator.multiPushRequestAsync(encode(batch)).whenComplete((response, e) -> {
+            try {
+                if ( e == null ) {
+                    this.distribute(batch, response);
+                } else {
+                    batch.values().forEach(push -> push.response.completeExceptionally(e));
+                }
+            } finally {
+                synchronized ( this ) {
+                    this.exchanges--;
+                    this.scheduleDispatch();
+                }
+            }
+        });
+    }
+
+    private void distribute(Map<String, PendingPush> batch, JSONObject response) {
+        try {
+            JSONArray responses = response.getJSONArray(KEY_RESPONSES);
+            for ( int i = 0; i < responses.length(); i++ ) {
+                JSONObject pushResponse = responses.getJSONObject(i);
+                PendingPush push = batch.remove(pushResponse.optString(IConnector.KEY_TOKEN));
+                if ( push != null ) {
+                    push.response.complete(pushResponse);
+                }
+            }
+        } catch ( JSONException e ) {
+            batch.values().forEach(push -> push.response.completeExceptionally(e));
+            return;
+        }
+        // Not answered this time, the requests are held again with the next exchange unless the connector already pushed a newer one
+        synchronized ( this ) {
+            batch.forEach(this.pending::putIfAbsent);
+        }
+    }
+
+    private static byte[] encode(Map<String, PendingPush> batch) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] prefix = ("{\"" + KEY_REQUESTS + "\":[").getBytes(StandardCharsets.UTF_8);
+        body.write(prefix, 0, prefix.length);
+        boolean first = true;
+        for ( PendingPush push : batch.values() ) {
+            if ( !first ) {
+                body.write(',');
+            }
+            body.write(push.request, 0, push.request.length);
+            first = false;
+        }
+        body.write(']');
+        body.write('}');
+        return body.toByteArray();
+    }
+
+    private static final class PendingPush {
+        private final byte[] request;
+        private final CompletableFuture<JSONObject> response = new CompletableFuture<>();
+
+        private PendingPush(byte[] request) {
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package de.fhg.iais.roberta.connection;
+
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Renders the requests a connector sends to the server while it is registered. The device info and the token do not change during a registration,
+ * so each request is rendered once per command and the same bytes are sent with every push request.
+ */
+public final class PushRequestEncoder {
+    private final String token;
+    private final String deviceInfo;
+    private final Map<String, byte[]> requests = new ConcurrentHashMap<>(4);
+
+    /**
+     * @param deviceInfo the device info of the robot, it is copied
+     * @param token the token of the registration
+     */
+    public PushRequestEncoder(JSONObject deviceInfo, String token) {
+        this.token = token;
+        this.deviceInfo = deviceInfo.toString();
+    }
+
+    public String getToken() {
+        return this.token;
+    }
+
+    /**
+     * Returns the encoded request for the command. The returned array is shared and must not be modified.
+     *
+     * @param cmd the command of the request, e.g. CMD_PUSH
+     * @return the UTF-8 encoded request
+     */
+    public byte[] encode(String cmd) {
+        return this.requests.computeIfAbsent(cmd, key -> this.toJson(key).toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates the request for the command as a new json object, for the requests that are not sent repeatedly.
+     *
+     * @param cmd the command of the request, e.g. CMD_PUSH
+     * @return the request
+     */
+    public JSONObject toJson(String cmd) {
+        JSONObject request = new JSONObject(this.deviceInfo);
+        request.put(IConnector.KEY_TOKEN, this.token);
+        request.put(IConnector.KEY_CMD, cmd);
+        return request;
+    }
+}
@@ -1,49 +1,71 @@
 package de.fhg.iais.roberta.connection;
 
-import net.lingala.zip4j.ZipFile;
-import net.lingala.zip4j.exception.ZipException;
-
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
 import org.apache.commons.lang3.SystemUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.asynchttpclient.AsyncHttpClient;
 import org.asynchttpclient.Dsl;
+import org.asynchttpclient.Response;
 import org.json.JSONObject;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.ProtocolException;
-import java.net.URL;
-import java.net.URLConnection;
+import java.io.SequenceInputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLException;
 
 import de.fhg.iais.roberta.util.Pair;
+import de.fhg.iais.roberta.util.ProgramCache;
 import de.fhg.iais.roberta.util.PropertyHelper;
+import de.fhg.iais.roberta.util.ZipHelper;
 
 /**
  * The server communicator runs the server protocol on behalf of the actual robot hardware.
@@ -56,10 +78,17 @@ public class ServerCommunicator {
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(ServerCommunicator.class);
 
     private static final String PUSH_ADDRESS = "/rest/pushcmd";
+    private static final String MULTI_PUSH_ADDRESS = "/rest/pushcmd/multi";
     private static final String DOWNLOAD_ADDRESS = "/rest/download";
     private static final String UPDATE_ADDRESS = "/rest/update";
     private static final int CONNECT_TIMEOUT = 5000;
     private static final int READ_TIMEOUT = 300000;
+    private static final String HTTP = "http://";
+    private static final String HTTPS = "https://";
+    private static final int HAL_DOWNLOAD_ATTEMPTS = 3;
+
+    // The scheme that worked for each server address
+    private static final Map<String, String> SCHEMES = new ConcurrentHashMap<>();
 
     private String serverAddress;
 
@@ -95,111 +124,350 @@ public class ServerCommunicator {
      * @throws IOException if the server is unreachable for whatever reason.
      */
     public JSONObject pushRequest(JSONObject requestContent) throws IOException {
-        Map<String, String> requestProperties = new HashMap<>();
-        requestProperties.put("Accept", "application/json");
+        return this.pushRequest(requestContent.toString().getBytes(StandardCharsets.UTF_8));
+    }
 
-        URLConnection conn = openURLConnection(this.serverAddress + PUSH_ADDRESS, "POST", requestProperties);
-        sendServerRequest(requestContent, conn);
-        String responseText = getServerResponse(conn);
+    /**
+     * Sends an already encoded push request, see {@link PushRequestEncoder}.
+     *
+     * @param requestContent the UTF-8 encoded json request, it is not modified
+     * @return response from the server
+     * @throws IOException if the server is unreachable for whatever reason.
+     */
+    public JSONObject pushRequest(byte[] requestContent) throws IOException {
+        HttpPost post = createPost("application/json", requestContent);
+        String responseText = this.execute(post, PUSH_ADDRESS, ServerCommunicator::getServerResponse);
 
         return new JSONObject(responseText);
     }
 
-    private static URLConnection openURLConnection(String url, String requestMethod, Map<String, String> requestProperties) throws IOException {
-        URLConnection conn;
-        try {
-            if ( url.contains("localhost") ) { // workaround for HttpParser warning server side when connecting via localhost
-                conn = getHttpConnection(url, requestMethod, requestProperties);
-            } else {
-                conn = getHttpsConnection(url, requestMethod, requestProperties);
+    /**
+     * Downloads a user program from the server as binary. The http POST is used here.
+     *
+     * @param requestContent all the content of a standard push request.
+     * @return the binary file of the response
+     * @throws IOException if the server is unreachable or something is wrong with the binary content.
+     */
+    public Pair<byte[], String> downloadProgram(JSONObject requestContent) throws IOException {
+        HttpPost post = createPost("application/octet-stream", requestContent);
+
+        return this.execute(post, DOWNLOAD_ADDRESS, ServerCommunicator::getBinaryFileFromResponse);
+    }
+
+    /**
+     * Downloads a user program into the {@link ProgramCache}. The content is written to disk while it arrives. If the previous program was sent with an
+     * ETag and is still cached, the ETag is sent as If-None-Match and the cached program is reused if the server answers 304 Not Modified.
+     *
+     * @param requestContent all the content of a standard push request.
+     * @param previous the program that was downloaded before, may be null
+     * @return the cached program
+     * @throws IOException if the server is unreachable or the program could not be cached.
+     */
+    public ProgramCache.Program downloadProgramToCache(JSONObject requestContent, ProgramCache.Program previous) throws IOException {
+        return this.downloadProgramToCache(requestContent, previous, null).getFirst();
+    }
+
+    /**
+     * Downloads a user program into the {@link ProgramCache} like {@link #downloadProgramToCache(JSONObject, ProgramCache.Program)} and hands it to the
+     * handler if it differs from the previous program. A program that is known to be new is handed to the handler while it is still arriving and written
+     * to the cache on the way. Only if the server did not send an ETag for the previous program, the new one has to be cached completely before it can
+     * be compared, the handler then reads it from the cache.
+     *
+     * @param requestContent all the content of a standard push request.
+     * @param previous the program that was downloaded before, may be null
+     * @param changedProgramHandler consumes a program that differs from the previous one, may be null
+     * @param <T> the type of the result of the handler
+     * @return the cached program and the result of the handler, the result is null if the handler was not called
+     * @throws IOException if the server is unreachable, the program could not be cached or the handler failed to read the content.
+     */
+    public <T> Pair<ProgramCache.Program, T> downloadProgramToCache(
+        JSONObject requestContent,
+        ProgramCache.Program previous,
+        IDownloadHandler<? extends T> changedProgramHandler) throws IOException {
+        ProgramCache cache = ProgramCache.getInstance();
+        HttpPost post = createPost("application/octet-stream", requestContent);
+        boolean conditional = (previous != null) && (previous.getEtag() != null) && (cache.get(previous.getEtag()) != null);
+        if ( conditional ) {
+            post.setHeader("If-None-Match", previous.getEtag());
+        }
+        boolean streamed = (changedProgramHandler != null) && (conditional || (previous == null));
+
+        Pair<ProgramCache.Program, T> download = this.execute(post, DOWNLOAD_ADDRESS, response -> {
+            if ( response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED ) {
+                ProgramCache.Program cached = cache.get(previous.getEtag());
+                if ( cached == null ) {
+                    throw new ClientProtocolException("Program is not modified but not cached anymore");
+                }
+                LOG.info("Program {} is not modified, using the cached one", cached);
+                return new Pair<>(cached, null);
             }
-            conn.connect();
-        } catch ( IOException ioException ) {
-            conn = getHttpConnection(url, requestMethod, requestProperties);
-            conn.connect();
+            HttpEntity entity = getEntity(response);
+            String fileName = getHeaderValue(response, "Filename");
+            String etag = getHeaderValue(response, "ETag");
+            try (InputStream content = entity.getContent()) {
+                if ( streamed ) {
+                    long contentLength = entity.getContentLength();
+                    return cache.store(content, fileName, etag, programContent -> changedProgramHandler.handle(programContent, contentLength, fileName));
+                }
+                return new Pair<>(cache.store(content, fileName, etag), null);
+            }
+        });
+
+        ProgramCache.Program program = download.getFirst();
+        if ( streamed || (changedProgramHandler == null) || program.equals(previous) ) {
+            return download;
         }
-        return conn;
+        try (InputStream content = Files.newInputStream(program.getPath())) {
+            return new Pair<>(program, changedProgramHandler.handle(content, Files.size(program.getPath()), program.getPath().getFileName().toString()));
+        }
+    }
+
+    /**
+     * Basically the same as downloading a user program but without any information about the EV3. It uses http GET(!).
+     *
+     * @param fwFile name of the file in the url as suffix ( .../rest/update/ev3menu)
+     * @return the binary file of the response
+     * @throws IOException if the server is unreachable or something is wrong with the binary content.
+     */
+    public Pair<byte[], String> downloadFirmwareFile(String fwFile) throws IOException {
+        HttpGet get = new HttpGet();
+        setRequestHeaders(get, "application/octet-stream");
+
+        return this.execute(get, UPDATE_ADDRESS + '/' + fwFile, ServerCommunicator::getBinaryFileFromResponse);
     }
 
-    private static HttpURLConnection getHttpConnection(String urlAddress, String requestMethod, Map<String, String> requestProperties) throws IOException {
-        URL url = new URL("http://" + urlAddress);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        setURLConnectionProperties(conn, requestMethod, requestProperties);
-        return conn;
+    /**
+     * Asynchronous variant of {@link #pushRequest(JSONObject)}. No thread is blocked while the server holds the request.
+     *
+     * @param requestContent data from the robot plus the token and the command send to the server (CMD_REGISTER or CMD_PUSH)
+     * @return a future for the response from the server, completed exceptionally if the server is unreachable for whatever reason
+     */
+    public CompletableFuture<JSONObject> pushRequestAsync(JSONObject requestContent) {
+        return this.pushRequestAsync(requestContent.toString().getBytes(StandardCharsets.UTF_8));
     }
 
-    private static HttpsURLConnection getHttpsConnection(String urlAddress, String requestMethod, Map<String, String> requestProperties) throws IOException {
-        URL url = new URL("https://" + urlAddress);
-        HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
-        setURLConnectionProperties(conn, requestMethod, requestProperties);
-        return conn;
+    /**
+     * Asynchronous variant of {@link #pushRequest(byte[])}.
+     *
+     * @param requestContent the UTF-8 encoded json request, it is not modified
+     * @return a future for the response from the server, completed exceptionally if the server is unreachable for whatever reason
+     */
+    public CompletableFuture<JSONObject> pushRequestAsync(byte[] requestContent) {
+        return this.executeAsync(PUSH_ADDRESS, "application/json", requestContent, response -> new JSONObject(response.getResponseBody(StandardCharsets.UTF_8)));
     }
 
-    private static void setURLConnectionProperties(HttpURLConnection conn, String requestMethod, Map<String, String> requestProperties)
-        throws ProtocolException {
-        conn.setConnectTimeout(CONNECT_TIMEOUT);
-        conn.setReadTimeout(READ_TIMEOUT);
-        conn.setDoOutput(true);
-        conn.setRequestMethod(requestMethod);
+    /**
+     * Sends the bundled push requests of several robots in one exchange, see {@link PushMultiplexer}.
+     *
+     * @param requestContent the UTF-8 encoded json object with the push requests
+     * @return a future for the json object with the responses, completed exceptionally if the server is unreachable for whatever reason
+     */
+    public CompletableFuture<JSONObject> multiPushRequestAsync(byte[] requestContent) {
+        return this.executeAsync(MULTI_PUSH_ADDRESS, "application/json", requestContent, response -> new JSONObject(response.getResponseBody(StandardCharsets.UTF_8)));
+    }
 
-        for ( Entry<String, String> property : requestProperties.entrySet() ) {
-            conn.setRequestProperty(property.getKey(), property.getValue());
+    /**
+     * Posts the request asynchronously on the shared async client. The scheme is decided the same way as for the blocking requests.
+     *
+     * @param path the rest path that is appended to the server address
+     * @param accept the accepted content type
+     * @param body the UTF-8 encoded json body of the request
+     * @param responseMapper converts the response, only called for successful responses
+     * @param <T> the type of the converted response
+     * @return a future for the converted response
+     */
+    private <T> CompletableFuture<T> executeAsync(String path, String accept, byte[] body, Function<Response, T> responseMapper) {
+        String address = this.serverAddress;
+        String scheme = SCHEMES.get(address);
+        if ( scheme != null ) {
+            return executeAsyncOnClient(scheme + address + path, accept, body, responseMapper).whenComplete((result, e) -> {
+                if ( isConnectionFailure(e) ) {
+                    SCHEMES.remove(address, scheme);
+                }
+            });
         }
-        conn.setRequestProperty("Accept-Charset", "UTF-8");
-        conn.setRequestProperty("Content-Type", "application/json");
+
+        if ( address.contains("localhost") ) { // workaround for HttpParser warning server side when connecting via localhost
+            return executeAsyncOnClient(HTTP + address + path, accept, body, responseMapper).thenApply(result -> {
+                SCHEMES.put(address, HTTP);
+                return result;
+            });
+        }
+        return executeAsyncOnClient(HTTPS + address + path, accept, body, responseMapper).handle((result, e) -> {
+            if ( e == null ) {
+                SCHEMES.put(address, HTTPS);
+                return CompletableFuture.completedFuture(result);
+            }
+            if ( !isConnectionFailure(e) ) {
+                CompletableFuture<T> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+            LOG.info("Could not connect to {} via https, using http: {}", address, e.getMessage());
+            return executeAsyncOnClient(HTTP + address + path, accept, body, responseMapper).thenApply(httpResult -> {
+                SCHEMES.put(address, HTTP);
+                return httpResult;
+            });
+        }).thenCompose(Function.identity());
     }
 
-    private static String getServerResponse(URLConnection conn) throws IOException {
-        InputStream responseEntity = new BufferedInputStream(conn.getInputStream());
-        String responseText = IOUtils.toString(responseEntity, "UTF-8");
-        responseEntity.close();
-        return responseText;
+    private static <T> CompletableFuture<T> executeAsyncOnClient(String url, String accept, byte[] body, Function<Response, T> responseMapper) {
+        return AsyncClientHolder.instance
+            .preparePost(url)
+            .setHeader("Accept", accept)
+            .setHeader("Accept-Charset", "UTF-8")
+            .setHeader("Content-Type", "application/json")
+            .setBody(body)
+            .execute()
+            .toCompletableFuture()
+            .thenApply(response -> {
+                if ( response.getStatusCode() >= HttpStatus.SC_BAD_REQUEST ) {
+                    throw new CompletionException(new HttpResponseException(response.getStatusCode(), response.getStatusText()));
+                }
+                return responseMapper.apply(response);
+            });
     }
 
-    private static void sendServerRequest(JSONObject requestContent, URLConnection conn) throws IOException {
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(requestContent.toString().getBytes(StandardCharsets.UTF_8));
-            os.flush();
+    private static boolean isConnectionFailure(Throwable e) {
+        for ( Throwable cause = e; cause != null; cause = cause.getCause() ) {
+            if ( (cause instanceof ConnectException) || (cause instanceof SSLException) ) {
+                return true;
+            }
         }
+        return false;
     }
 
-    /**
-     * Downloads a user program from the server as binary. The http POST is used here.
-     *
-     * @param requestContent all the content of a standard push request.
-     * @return the binary file of the response
-     * @throws IOException if the server is unreachable or something is wrong with the binary content.
-     */
-    public Pair<byte[], String> downloadProgram(JSONObject requestContent) throws IOException {
-        Map<String, String> requestProperties = new HashMap<>();
-        requestProperties.put("Accept", "application/octet-stream");
+    private static HttpPost createPost(String accept, JSONObject requestContent) {
+        return createPost(accept, requestContent.toString().getBytes(StandardCharsets.UTF_8));
+    }
 
-        URLConnection conn = openURLConnection(this.serverAddress + DOWNLOAD_ADDRESS, "POST", requestProperties);
-        sendServerRequest(requestContent, conn);
+    private static HttpPost createPost(String accept, byte[] requestContent) {
+        HttpPost post = new HttpPost();
+        setRequestHeaders(post, accept);
+        post.setEntity(new ByteArrayEntity(requestContent, ContentType.APPLICATION_JSON));
+        return post;
+    }
 
-        return getBinaryFileFromResponse(conn);
+    private static void setRequestHeaders(HttpRequestBase request, String accept) {
+        request.setHeader("Accept", accept);
+        request.setHeader("Accept-Charset", "UTF-8");
+        request.setHeader("Content-Type", "application/json");
     }
 
     /**
-     * Basically the same as downloading a user program but without any information about the EV3. It uses http GET(!).
+     * Executes the request on the pooled client. The scheme is decided once per server address: https is tried first (except for localhost), http is used
+     * if the https connection could not be established. The working scheme is remembered until a connection with it fails.
      *
-     * @param fwFile name of the file in the url as suffix ( .../rest/update/ev3menu)
-     * @return the binary file of the response
-     * @throws IOException if the server is unreachable or something is wrong with the binary content.
+     * @param request the request without uri, the entity has to be repeatable
+     * @param path the rest path that is appended to the server address
+     * @param responseHandler handles the response, the connection is released to the pool afterwards
+     * @param <T> the type of the handled response
+     * @return the handled response
+     * @throws IOException if the server is unreachable for whatever reason
      */
-    public Pair<byte[], String> downloadFirmwareFile(String fwFile) throws IOException {
-        Map<String, String> requestProperties = new HashMap<>();
-        requestProperties.put("Accept", "application/octet-stream");
+    private <T> T execute(HttpRequestBase request, String path, ResponseHandler<? extends T> responseHandler) throws IOException {
+        String address = this.serverAddress;
+        String scheme = SCHEMES.get(address);
+        if ( scheme != null ) {
+            try {
+                return executeOnPool(request, scheme + address + path, responseHandler);
+            } catch ( ConnectException | ConnectTimeoutException | SSLException e ) {
+                SCHEMES.remove(address, scheme);
+                throw e;
+            }
+        }
 
-        URLConnection conn = openURLConnection(this.serverAddress + UPDATE_ADDRESS + '/' + fwFile, "GET", requestProperties);
+        if ( !address.contains("localhost") ) { // workaround for HttpParser warning server side when connecting via localhost
+            try {
+                T result = executeOnPool(request, HTTPS + address + path, responseHandler);
+                SCHEMES.put(address, HTTPS);
+                return result;
+            } catch ( ConnectException | ConnectTimeoutException | SSLException e ) {
+                LOG.info("Could not connect to {} via https, using http: {}", address, e.getMessage());
+            }
+        }
+        T result = executeOnPool(request, HTTP + address + path, responseHandler);
+        SCHEMES.put(address, HTTP);
+        return result;
+    }
 
-        return getBinaryFileFromResponse(conn);
+    private static <T> T executeOnPool(HttpRequestBase request, String url, ResponseHandler<? extends T> responseHandler) throws IOException {
+        try {
+            request.setURI(new URI(url));
+        } catch ( URISyntaxException e ) {
+            throw new IOException(e);
+        }
+        return PooledClientHolder.instance.execute(request, responseHandler);
     }
 
-    private static Pair<byte[], String> getBinaryFileFromResponse(URLConnection conn) throws IOException {
-        try (InputStream responseEntity = new BufferedInputStream(conn.getInputStream())) {
-            return new Pair<>(IOUtils.toByteArray(responseEntity), conn.getHeaderField("Filename"));
+    private static String getServerResponse(HttpResponse response) throws IOException {
+        return EntityUtils.toString(getEntity(response), StandardCharsets.UTF_8);
+    }
+
+    private static Pair<byte[], String> getBinaryFileFromResponse(HttpResponse response) throws IOException {
+        return new Pair<>(EntityUtils.toByteArray(getEntity(response)), getHeaderValue(response, "Filename"));
+    }
+
+    private static String getHeaderValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return (header == null) ? null : header.getValue();
+    }
+
+    private static HttpEntity getEntity(HttpResponse response) throws IOException {
+        StatusLine statusLine = response.getStatusLine();
+        if ( statusLine.getStatusCode() >= HttpStatus.SC_BAD_REQUEST ) {
+            EntityUtils.consume(response.getEntity());
+            throw new HttpResponseException(statusLine.getStatusCode(), statusLine.getReasonPhrase());
         }
+        HttpEntity entity = response.getEntity();
+        if ( entity == null ) {
+            throw new ClientProtocolException("Response contains no content");
+        }
+        return entity;
+    }
+
+    private static CloseableHttpClient createPooledClient() {
+        PropertyHelper properties = PropertyHelper.getInstance();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(Integer.parseInt(properties.getProperty("serverConnectionPoolSize")));
+        connectionManager.setDefaultMaxPerRoute(Integer.parseInt(properties.getProperty("serverConnectionPoolSizePerRoute")));
+
+        RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(CONNECT_TIMEOUT).setSocketTimeout(READ_TIMEOUT).build();
+        return HttpClients.custom()
+            .useSystemProperties()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .evictExpiredConnections()
+            .evictIdleConnections(Long.parseLong(properties.getProperty("serverConnectionIdleTimeout")), TimeUnit.SECONDS)
+            .build();
+    }
+
+    private static AsyncHttpClient createAsyncClient() {
+        PropertyHelper properties = PropertyHelper.getInstance();
+        return Dsl.asyncHttpClient(Dsl.config()
+            .setUseProxyProperties(true)
+            .setKeepAlive(true)
+            .setMaxConnections(Integer.parseInt(properties.getProperty("serverConnectionPoolSize")))
+            .setMaxConnectionsPerHost(Integer.parseInt(properties.getProperty("serverConnectionPoolSizePerRoute")))
+            .setPooledConnectionIdleTimeout(Integer.parseInt(properties.getProperty("serverConnectionIdleTimeout")) * 1000)
+            .setConnectTimeout(CONNECT_TIMEOUT)
+            .setReadTimeout(READ_TIMEOUT)
+            .setRequestTimeout(READ_TIMEOUT)
+            .setThreadPoolName("ServerCommunicator"));
+    }
+
+    /**
+     * Holds the async client shared by all server communicators, one event loop drives the push requests of every connector.
+     */
+    private static final class AsyncClientHolder {
+        private static final AsyncHttpClient instance = createAsyncClient();
+    }
+
+    /**
+     * Holds the keep-alive client shared by all server communicators, connections are reused across the push loop.
+     */
+    private static final class PooledClientHolder {
+        private static final CloseableHttpClient instance = createPooledClient();
     }
 
     /**
@@ -226,22 +494,15 @@ public class ServerCommunicator {
     }
 
     public boolean verifyHalChecksum(String firmware) {
-        HttpGet get = new HttpGet(String.format(this.serverUpdateChecksumAddress, firmware));
-        get.setHeader("User-Agent", "Java/1.7.0_60"); // TODO just use https
-
-        try (CloseableHttpResponse response = this.httpclient.execute(get);
-             BufferedReader rd = new BufferedReader(new InputStreamReader(response.getEntity().getContent(), StandardCharsets.UTF_8))) {
+        try {
+            String checksum = this.getHalChecksum(firmware);
             MessageDigest digest = MessageDigest.getInstance("SHA-1");
-            Path path = Paths.get(this.halZipPath);
-            digest.update(Files.readAllBytes(path));
-            byte[] result = digest.digest();
-            LOG.info("Current hals checksum: {} ", Base64.getEncoder().encodeToString(result));
-
-            String line;
-            if ( (line = rd.readLine()) != null ) {
-                LOG.info("Received checksum from server: {} ", line);
-                return Base64.getEncoder().encodeToString(result).equals(line);
+            try (InputStream is = new DigestInputStream(Files.newInputStream(Paths.get(this.halZipPath)), digest)) {
+                IOUtils.skip(is, Long.MAX_VALUE);
             }
+            String result = Base64.getEncoder().encodeToString(digest.digest());
+            LOG.info("Current hals checksum: {} ", result);
+            return result.equals(checksum);
         } catch ( NoSuchAlgorithmException e ) {
             LOG.error("Checksum algorithm does not exist: {}", e.getMessage());
         } catch ( ClientProtocolException e ) {
@@ -252,24 +513,108 @@ public class ServerCommunicator {
         return false;
     }
 
+    private String getHalChecksum(String firmware) throws IOException {
+        HttpGet get = new HttpGet(String.format(this.serverUpdateChecksumAddress, firmware));
+        get.setHeader("User-Agent", "Java/1.7.0_60"); // TODO just use https
+
+        try (CloseableHttpResponse response = this.httpclient.execute(get);
+             BufferedReader rd = new BufferedReader(new InputStreamReader(getEntity(response).getContent(), StandardCharsets.UTF_8))) {
+            String line = rd.readLine();
+            if ( line == null ) {
+                throw new ClientProtocolException("Received no checksum from server");
+            }
+            LOG.info("Received checksum from server: {} ", line);
+            return line;
+        }
+    }
+
     /**
-     * Downloads and unzips the new NAO Hal firmware in the user directory.
+     * Downloads and unzips the new NAO Hal firmware in the user directory. The files are extracted while the download arrives. An interrupted download
+     * is resumed from where it stopped, and the download is only used if its checksum matches the one the server reports.
      *
      * @param firmware the name of the firmware
      * @throws IOException if something went wrong while downloading or unzipping
      */
     public void updateHalNAO(String firmware) throws IOException {
-        try {
-            FileUtils.copyURLToFile(new URL(String.format(this.serverUpdateAddress, firmware)), new File(this.halZipPath));
-            File dataFile = new File(this.halZipPath);
-            ZipFile zipFile = new ZipFile(dataFile);
-            zipFile.extractAll(this.workingDirectory);
-            LOG.info("New HAL downloaded and unzipped");
-        } catch ( ZipException | MalformedURLException e ) {
+        String checksum = this.getHalChecksum(firmware);
+        Path partFile = Paths.get(this.halZipPath + ".part");
+        Path stagingDirectory = Paths.get(this.workingDirectory, "hal.staging");
+        Files.createDirectories(partFile.getParent());
+
+        IOException lastException = null;
+        for ( int attempt = 1; attempt <= HAL_DOWNLOAD_ATTEMPTS; attempt++ ) {
+            try {
+                String downloadChecksum = this.downloadHal(firmware, partFile, stagingDirectory);
+                if ( !downloadChecksum.equals(checksum) ) {
+                    Files.deleteIfExists(partFile);
+                    throw new IOException("Checksum of the downloaded HAL does not match the one of the server");
+                }
+                moveFiles(stagingDirectory, Paths.get(this.workingDirectory));
+                Files.move(partFile, Paths.get(this.halZipPath), StandardCopyOption.REPLACE_EXISTING);
+                LOG.info("New HAL downloaded and unzipped");
+                return;
+            } catch ( IOException e ) {
+                LOG.warn("HAL download attempt {} of {} failed: {}", attempt, HAL_DOWNLOAD_ATTEMPTS, e.getMessage());
+                lastException = e;
+            } finally {
+                FileUtils.deleteQuietly(stagingDirectory.toFile());
+            }
+        }
+        throw lastException;
+    }
+
+    /**
+     * Downloads the HAL into the part file and extracts it into the staging directory at the same time. If the part file already contains the beginning of
+     * the HAL, only the rest is requested. The existing part is extracted again from disk before the rest arrives.
+     *
+     * @return the Base64 encoded SHA-1 checksum of the complete download
+     */
+    private String downloadHal(String firmware, Path partFile, Path stagingDirectory) throws IOException {
+        long offset = Files.exists(partFile) ? Files.size(partFile) : 0L;
+        HttpGet get = new HttpGet(String.format(this.serverUpdateAddress, firmware));
+        if ( offset > 0L ) {
+            get.setHeader("Range", "bytes=" + offset + '-');
+        }
+
+        try (CloseableHttpResponse response = this.httpclient.execute(get)) {
+            if ( response.getStatusLine().getStatusCode() == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE ) {
+                EntityUtils.consume(response.getEntity());
+                Files.deleteIfExists(partFile);
+                throw new IOException("Partial HAL download is not usable anymore");
+            }
+            HttpEntity entity = getEntity(response);
+            boolean resumed = response.getStatusLine().getStatusCode() == HttpStatus.SC_PARTIAL_CONTENT;
+            if ( resumed ) {
+                LOG.info("Resuming HAL download after {} bytes", offset);
+            }
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            FileUtils.deleteQuietly(stagingDirectory.toFile());
+            Files.createDirectories(stagingDirectory);
+            try (InputStream previous = resumed ? Files.newInputStream(partFile) : new ByteArrayInputStream(new byte[0]);
+                 OutputStream part = resumed ? Files.newOutputStream(partFile, StandardOpenOption.APPEND) : Files.newOutputStream(partFile);
+                 InputStream content = new DigestInputStream(new SequenceInputStream(previous, new TeeInputStream(entity.getContent(), part)), digest)) {
+                ZipHelper.unzip(content, stagingDirectory);
+                IOUtils.skip(content, Long.MAX_VALUE); // the rest of the archive after the last entry
+            }
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch ( NoSuchAlgorithmException e ) {
             throw new IOException(e);
         }
     }
 
+    private static void moveFiles(Path sourceDirectory, Path targetDirectory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(sourceDirectory)) {
+            files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        for ( Path file : files ) {
+            Path target = targetDirectory.resolve(sourceDirectory.relativize(file));
+            Files.createDirectories(target.getParent());
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     /**
      * Shut down the http client.
      */
@@ -0,0 +1,55 @@
+package de.fhg.iais.roberta.connection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import de.fhg.iais.roberta.connection.IConnector.State;
+import de.fhg.iais.roberta.util.IOraListener;
+
+/**
+ * Delivers the state events of one connector to its listeners. Listeners may be registered and unregistered from any thread while events are
+ * delivered. Events are delivered one after another in the order they were fired, an event that only repeats the previous one is dropped.
+ */
+final class StateDispatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(StateDispatcher.class);
+
+    private final IConnector<?> connector;
+    private final Collection<IOraListener<StateEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    private StateEvent lastEvent = null;
+
+    StateDispatcher(IConnector<?> connector) {
+        this.connector = connector;
+    }
+
+    void registerListener(IOraListener<StateEvent> listener) {
+        this.listeners.add(listener);
+    }
+
+    void unregisterListener(IOraListener<StateEvent> listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Creates the event for the state change and delivers it to all listeners.
+     *
+     * @param state the new state
+     * @param details the details of the change, may be empty
+     */
+    synchronized void dispatch(State state, String... details) {
+        StateEvent event = new StateEvent(this.connector, state, Arrays.asList(details.clone()), System.nanoTime(), this.lastEvent);
+        if ( event.isRepetitionOf(this.lastEvent) ) {
+            return;
+        }
+        this.lastEvent = event;
+        LOG.debug("{} changed from {} to {} after {} ms", this.connector.getRobot().getPrettyName(), event.getPreviousState(), event,
+            event.getMillisInPreviousState());
+        for ( IOraListener<StateEvent> listener : this.listeners ) {
+            listener.update(event);
+        }
+    }
+}
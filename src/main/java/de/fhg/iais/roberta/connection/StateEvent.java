@@ -0,0 +1,87 @@
+package de.fhg.iais.roberta.connection;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import de.fhg.iais.roberta.connection.IConnector.State;
+
+/**
+ * An immutable state change of a connector. Besides the new state it carries the details of the change, e.g. the error output of a failed upload,
+ * and when it happened, so the time spent in each state can be measured.
+ */
+public final class StateEvent {
+    private final IConnector<?> connector;
+    private final State state;
+    private final List<String> details;
+    private final long timestamp;
+    private final State previousState;
+    private final long previousTimestamp;
+
+    StateEvent(IConnector<?> connector, State state, List<String> details, long timestamp, StateEvent previous) {
+        this.connector = connector;
+        this.state = state;
+        this.details = Collections.unmodifiableList(details);
+        this.timestamp = timestamp;
+        this.previousState = (previous == null) ? null : previous.state;
+        this.previousTimestamp = (previous == null) ? timestamp : previous.timestamp;
+    }
+
+    /**
+     * Returns the connector that changed its state.
+     *
+     * @return the connector
+     */
+    public IConnector<?> getConnector() {
+        return this.connector;
+    }
+
+    public State getState() {
+        return this.state;
+    }
+
+    /**
+     * Returns the details of the state change. May be empty.
+     *
+     * @return an unmodifiable list of details
+     */
+    public List<String> getDetails() {
+        return this.details;
+    }
+
+    /**
+     * Returns when the state changed, in the monotonic time of {@link System#nanoTime()}.
+     *
+     * @return the timestamp in nanoseconds
+     */
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    /**
+     * Returns the state of the connector before this change.
+     *
+     * @return the previous state, null if this is the first state of the connector
+     */
+    public State getPreviousState() {
+        return this.previousState;
+    }
+
+    /**
+     * Returns how long the connector was in the previous state.
+     *
+     * @return the duration in milliseconds, 0 if this is the first state of the connector
+     */
+    public long getMillisInPreviousState() {
+        return TimeUnit.NANOSECONDS.toMillis(this.timestamp - this.previousTimestamp);
+    }
+
+    boolean isRepetitionOf(StateEvent other) {
+        return (other != null) && (this.connector == other.connector) && (this.state == other.state) && this.details.equals(other.details);
+    }
+
+    @Override
+    public String toString() {
+        return this.state + (this.details.isEmpty() ? "" : " " + this.details);
+    }
+}
@@ -10,14 +10,16 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Enumeration;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.ExecutionException;
 
 import de.fhg.iais.roberta.connection.IDetector;
@@ -28,42 +30,156 @@ import de.fhg.iais.roberta.util.PropertyHelper;
 import static de.fhg.iais.roberta.connection.IConnector.CMD_REGISTER;
 import static de.fhg.iais.roberta.connection.IConnector.KEY_CMD;
 
+/**
+ * Detector for robots that are connected by a USB network (RNDIS). The robot is only asked for its name if one of the network interfaces is on
+ * its subnet, so there is no HTTP traffic on computers without such a robot. Robots that do not answer are asked less and less often.
+ */
 public class RndisDetector implements IDetector {
     private static final Logger LOG = LoggerFactory.getLogger(RndisDetector.class);
 
-    private static final Map<String, Class<? extends AbstractWiredRobot>> DEVICES = new HashMap<>(1);
-    static {
-        DEVICES.put(PropertyHelper.getInstance().getProperty("brickIp"), Ev3.class);
+    private static final int PROBE_TIMEOUT = 2000;
+    private static final long MIN_PROBE_INTERVAL = 1000L;
+    private static final long MAX_PROBE_INTERVAL = 16000L;
+
+    private final List<Probe> probes = new ArrayList<>(1);
+
+    public RndisDetector() {
+        this.probes.add(new Probe(PropertyHelper.getInstance().getProperty("brickIp"), Ev3.class));
     }
 
     @Override
     public List<IRobot> detectRobots() {
-        try (AsyncHttpClient client = Dsl.asyncHttpClient()) {
+        List<IRobot> robots = new ArrayList<>(5);
+        for ( Probe probe : this.probes ) {
+            IRobot robot = probe.detect();
+            if ( robot != null ) {
+                robots.add(robot);
+            }
+        }
+        return robots;
+    }
+
+    /**
+     * Checks whether an active network interface has an IPv4 address on the subnet of the address.
+     *
+     * @param address the address of the robot
+     * @return whether the robot could be reached over a local link
+     */
+    static boolean hasLinkTo(InetAddress address) {
+        try {
+            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            while ( interfaces.hasMoreElements() ) {
+                NetworkInterface nif = interfaces.nextElement();
+                if ( !nif.isUp() || nif.isLoopback() ) {
+                    continue;
+                }
+                for ( InterfaceAddress interfaceAddress : nif.getInterfaceAddresses() ) {
+                    if ( (interfaceAddress.getAddress() instanceof Inet4Address)
+                        && isOnSubnet(interfaceAddress.getAddress(), interfaceAddress.getNetworkPrefixLength(), address) ) {
+                        return true;
+                    }
+                }
+            }
+        } catch ( SocketException e ) {
+            LOG.error("Could not access the network interfaces: {}", e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether two addresses share the first bits.
+     *
+     * @param local the address of the network interface
+     * @param prefixLength the number of bits of the subnet
+     * @param remote the address to check
+     * @return whether the remote address is on the subnet of the local one
+     */
+    static boolean isOnSubnet(InetAddress local, int prefixLength, InetAddress remote) {
+        byte[] localBytes = local.getAddress();
+        byte[] remoteBytes = remote.getAddress();
+        if ( (localBytes.length != remoteBytes.length) || (prefixLength <= 0) ) {
+            return false;
+        }
+        for ( int bit = 0; bit < Math.min(prefixLength, localBytes.length * 8); bit++ ) {
+            int mask = 0x80 >>> (bit % 8);
+            if ( (localBytes[bit / 8] & mask) != (remoteBytes[bit / 8] & mask) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Asks one robot address for the name of the robot.
+     */
+    private static final class Probe {
+        private final String address;
+        private final Class<? extends AbstractWiredRobot> robotClass;
+
+        private long interval = MIN_PROBE_INTERVAL;
+        private long nextProbe = 0L;
+
+        private Probe(String address, Class<? extends AbstractWiredRobot> robotClass) {
+            this.address = address;
+            this.robotClass = robotClass;
+        }
+
+        private IRobot detect() {
+            try {
+                if ( !hasLinkTo(InetAddress.getByName(this.address)) ) {
+                    this.interval = MIN_PROBE_INTERVAL; // ask immediately once the link comes up
+                    this.nextProbe = 0L;
+                    return null;
+                }
+            } catch ( UnknownHostException e ) {
+                LOG.error("Invalid robot address {}: {}", this.address, e.getMessage());
+                return null;
+            }
+
+            long now = System.currentTimeMillis();
+            if ( now < this.nextProbe ) {
+                return null;
+            }
+
+            IRobot robot = this.probe();
+            this.interval = (robot == null) ? Math.min(this.interval * 2, MAX_PROBE_INTERVAL) : MIN_PROBE_INTERVAL;
+            this.nextProbe = (robot == null) ? (now + this.interval) : 0L;
+            return robot;
+        }
+
+        private IRobot probe() {
             JSONObject request = new JSONObject();
             request.put(KEY_CMD, CMD_REGISTER);
 
-            List<IRobot> robots = new ArrayList<>(5);
-            for ( Entry<String, Class<? extends AbstractWiredRobot>> entry : DEVICES.entrySet() ) {
+            try {
                 ListenableFuture<String>
                     name =
-                    client.preparePost("http://" + entry.getKey() + "/brickinfo")
-                          .addHeader("ContentType", ContentType.APPLICATION_JSON)
-                          .setBody(request.toString())
-                          .execute(new StringAsyncCompletionHandler());
-                robots.add(entry.getValue().getConstructor(String.class).newInstance(name.get()));
+                    ProbeClientHolder.instance.preparePost("http://" + this.address + "/brickinfo")
+                                              .addHeader("ContentType", ContentType.APPLICATION_JSON)
+                                              .setBody(request.toString())
+                                              .execute(new StringAsyncCompletionHandler());
+                return this.robotClass.getConstructor(String.class).newInstance(name.get());
+            } catch ( InterruptedException e ) {
+                LOG.error("Robot request was interrupted: {}", e.getMessage());
+                Thread.currentThread().interrupt();
+            } catch ( ExecutionException e ) {
+                LOG.info("Could not find RNDIS robot: {}", e.getMessage());
+            } catch ( InstantiationException | InvocationTargetException | NoSuchMethodException | IllegalAccessException e ) {
+                LOG.error("Robot not implemented: {}", e.getMessage());
             }
-            return robots;
-        } catch ( IOException e ) {
-            LOG.error("Could not close async client: {}", e.getMessage());
-        } catch ( InterruptedException e ) {
-            LOG.error("Robot request was interrupted: {}", e.getMessage());
-        } catch ( ExecutionException e ) {
-            LOG.info("Could not find RNDIS robot: {}", e.getMessage());
-        } catch ( InstantiationException | InvocationTargetException | NoSuchMethodException | IllegalAccessException e ) {
-            LOG.error("Robot not implemented: {}", e.getMessage());
+            return null;
         }
+    }
 
-        return Collections.emptyList();
+    /**
+     * Holds the client used for all probes, robots on a local link answer quickly or not at all.
+     */
+    private static final class ProbeClientHolder {
+        private static final AsyncHttpClient instance = Dsl.asyncHttpClient(Dsl.config()
+            .setConnectTimeout(PROBE_TIMEOUT)
+            .setReadTimeout(PROBE_TIMEOUT)
+            .setRequestTimeout(PROBE_TIMEOUT)
+            .setThreadPoolName("RndisDetector"));
     }
 
     private static class StringAsyncCompletionHandler extends AsyncCompletionHandler<String> {
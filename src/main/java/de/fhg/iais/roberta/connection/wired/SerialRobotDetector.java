@@ -2,7 +2,6 @@ package de.fhg.iais.roberta.connection.wired;
 
 import de.fhg.iais.roberta.connection.wired.mBot2.Mbot2;
 import de.fhg.iais.roberta.connection.wired.spike.Spike;
-import static de.fhg.iais.roberta.util.WiredRobotIdFileHelper.load;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -20,6 +19,7 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import com.fazecast.jSerialComm.SerialPort;
 import org.apache.commons.codec.Charsets;
 import org.apache.commons.lang3.SystemUtils;
 import org.slf4j.Logger;
@@ -29,32 +29,47 @@ import de.fhg.iais.roberta.connection.IDetector;
 import de.fhg.iais.roberta.connection.IRobot;
 import de.fhg.iais.roberta.connection.wired.arduino.Arduino;
 import de.fhg.iais.roberta.connection.wired.microbit.Microbit;
-import de.fhg.iais.roberta.util.Pair;
+import de.fhg.iais.roberta.util.PropertyHelper;
 import de.fhg.iais.roberta.util.SerialDevice;
+import de.fhg.iais.roberta.util.WiredRobotIdFileHelper;
+import de.fhg.iais.roberta.util.WiredRobotIdTable;
 
 public class SerialRobotDetector implements IDetector {
     private static final Logger LOG = LoggerFactory.getLogger(SerialRobotDetector.class);
 
-    private Map<SerialDevice, WiredRobotType> supportedRobots;
-    private Map<Integer, String> readIdFileErrors;
+    // auto: jSerialComm on Windows and macOS, hotplug monitor or sysfs on Linux; native: the operating system tools; jSerialComm: everywhere
+    // On Linux the monitor answers from its table without any I/O, jSerialComm reads sysfs on every call like the sysfs walker, which the monitor
+    // only needs at the start, after lost events and if /dev cannot be watched.
+    private static final String SERIAL_ENUMERATION = PropertyHelper.getInstance().getProperty("serialEnumeration");
+
+    private WiredRobotIdTable supportedRobots;
+
+    // the robots found in the device table of the hotplug monitor with the given version, guarded by this
+    private long detectedVersion = -1L;
+    private List<IRobot> detectedRobots = new ArrayList<>();
 
     public SerialRobotDetector() {
-        Pair<Map<SerialDevice, WiredRobotType>, Map<Integer, String>> loadIdsResult = load();
-        this.supportedRobots = loadIdsResult.getFirst();
-        this.readIdFileErrors = loadIdsResult.getSecond();
+        this.supportedRobots = WiredRobotIdFileHelper.getTable();
     }
 
     public Map<Integer, String> getReadIdFileErrors() {
-        return new HashMap<>(this.readIdFileErrors);
+        return new HashMap<>(this.supportedRobots.getErrors());
     }
 
+    /**
+     * Returns the robots of the plugged in USB devices. While the hotplug monitor watches the devices, the robots are only looked up again if its
+     * table or the id file changed.
+     */
     @Override
-    public List<IRobot> detectRobots() {
+    public synchronized List<IRobot> detectRobots() {
+        WiredRobotIdTable table = WiredRobotIdFileHelper.getTable();
+        long version = (usesHotplugMonitor() && UsbHotplugMonitor.getInstance().isWatching()) ? UsbHotplugMonitor.getInstance().getVersion() : -1L;
+        if ( (version >= 0L) && (version == this.detectedVersion) && (table == this.supportedRobots) ) {
+            return new ArrayList<>(this.detectedRobots);
+        }
         List<IRobot> detectedRobots = new ArrayList<>(20);
 
-        Pair<Map<SerialDevice, WiredRobotType>, Map<Integer, String>> loadIdsResult = load();
-        this.supportedRobots = loadIdsResult.getFirst();
-        this.readIdFileErrors = loadIdsResult.getSecond();
+        this.supportedRobots = table;
 
         List<SerialDevice> devices = getUsbDevices();
 
@@ -92,12 +107,36 @@ public class SerialRobotDetector implements IDetector {
                 }
             }
         }
-        return detectedRobots;
+        this.detectedVersion = version;
+        this.detectedRobots = detectedRobots;
+        return new ArrayList<>(detectedRobots);
+    }
+
+    /**
+     * Plugged in robots should show up at once. While the hotplug monitor reports the changes the default interval is enough, otherwise listing the
+     * serial devices is cheap enough to do it every second.
+     */
+    @Override
+    public long getMaxScanInterval() {
+        return (usesHotplugMonitor() && UsbHotplugMonitor.getInstance().isWatching()) ? IDetector.super.getMaxScanInterval() : 1000L;
+    }
+
+    /**
+     * Reports plugged in and unplugged USB devices if the hotplug monitor is used.
+     */
+    @Override
+    public void addChangeListener(Runnable listener) {
+        if ( usesHotplugMonitor() ) {
+            UsbHotplugMonitor.getInstance().addListener(listener);
+        }
+    }
+
+    private static boolean usesHotplugMonitor() {
+        return SystemUtils.IS_OS_LINUX && !SERIAL_ENUMERATION.equals("jSerialComm");
     }
 
     public static String getPortOfConnectedRobotType(WiredRobotType wiredRobotTypeToLookup) {
-        Pair<Map<SerialDevice, WiredRobotType>, Map<Integer, String>> loadIdsResult = load();
-        Map<SerialDevice, WiredRobotType> supportedRobots = loadIdsResult.getFirst();
+        WiredRobotIdTable supportedRobots = WiredRobotIdFileHelper.getTable();
         List<SerialDevice> devices = getUsbDevices();
         for ( SerialDevice device : devices ) {
             WiredRobotType wiredRobotType = supportedRobots.get(device);
@@ -109,9 +148,13 @@ public class SerialRobotDetector implements IDetector {
     }
 
     public static List<SerialDevice> getUsbDevices() {
+        if ( SERIAL_ENUMERATION.equals("jSerialComm") || (SERIAL_ENUMERATION.equals("auto") && !SystemUtils.IS_OS_LINUX) ) {
+            return getUsbDevicesJSerialComm();
+        }
         if ( SystemUtils.IS_OS_LINUX ) {
             LOG.debug("Linux detected");
-            return getUsbDevicesLinux();
+            List<SerialDevice> devices = UsbHotplugMonitor.getInstance().getDevices();
+            return (devices == null) ? getUsbDevicesLinux() : devices;
         } else if ( SystemUtils.IS_OS_WINDOWS ) {
             LOG.debug("Windows detected");
             return getUsbDevicesWindows();
@@ -122,6 +165,46 @@ public class SerialRobotDetector implements IDetector {
         throw new UnsupportedOperationException("Operating system not supported!");
     }
 
+    /**
+     * Lists the USB serial devices with the port metadata of jSerialComm. No process is started, the ids are read by the native library of
+     * jSerialComm.
+     *
+     * @return the serial ports that belong to a USB device
+     */
+    static List<SerialDevice> getUsbDevicesJSerialComm() {
+        List<PortInfo> ports = new ArrayList<>(10);
+        for ( SerialPort serialPort : SerialPort.getCommPorts() ) {
+            ports.add(new PortInfo(serialPort.getSystemPortName(), serialPort.getVendorID(), serialPort.getProductID(), serialPort.getPortDescription()));
+        }
+        return toUsbDevices(ports, SystemUtils.IS_OS_MAC_OSX);
+    }
+
+    /**
+     * Keeps the ports that belong to a USB device. On macOS the ports are named like in the other enumerations, by their tty device.
+     *
+     * @param ports the ports listed by jSerialComm
+     * @param macOs whether the ports were listed on macOS
+     * @return the serial ports that belong to a USB device
+     */
+    static List<SerialDevice> toUsbDevices(Iterable<PortInfo> ports, boolean macOs) {
+        List<SerialDevice> devices = new ArrayList<>(5);
+        for ( PortInfo portInfo : ports ) {
+            if ( (portInfo.vendorId <= 0) || (portInfo.productId <= 0) ) {
+                continue; // not a USB device
+            }
+            String port = portInfo.systemPortName;
+            if ( macOs ) {
+                // the other enumerations use the tty device, jSerialComm lists the call-out device as well
+                if ( port.startsWith("tty.") ) {
+                    continue;
+                }
+                port = port.startsWith("cu.") ? ("tty." + port.substring(3)) : port;
+            }
+            devices.add(new SerialDevice(String.format("%04X", portInfo.vendorId), String.format("%04X", portInfo.productId), port, portInfo.description));
+        }
+        return devices;
+    }
+
     private static List<SerialDevice> getUsbDevicesLinux() {
         List<SerialDevice> devices = new ArrayList<>(5);
         File devicesDir = new File("/sys/bus/usb/devices");
@@ -240,4 +323,21 @@ public class SerialRobotDetector implements IDetector {
         }
         return devices;
     }
+
+    /**
+     * The metadata of a serial port as listed by jSerialComm.
+     */
+    static final class PortInfo {
+        private final String systemPortName;
+        private final int vendorId;
+        private final int productId;
+        private final String description;
+
+        PortInfo(String systemPortName, int vendorId, int productId, String description) {
+            this.systemPortName = systemPortName;
+            this.vendorId = vendorId;
+            this.productId = productId;
+            this.description = description;
+        }
+    }
 }
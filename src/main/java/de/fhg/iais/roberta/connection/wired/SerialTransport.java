@@ -0,0 +1,166 @@
+package de.fhg.iais.roberta.connection.wired;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fazecast.jSerialComm.SerialPort;
+import com.fazecast.jSerialComm.SerialPortDataListener;
+import com.fazecast.jSerialComm.SerialPortEvent;
+import com.fazecast.jSerialComm.SerialPortInvalidPortException;
+
+/**
+ * Serial connection to a robot that delivers the received bytes as soon as they arrive. jSerialComm calls the transport when data is available, the
+ * bytes are handed to the current receiver on that thread. Without a receiver the bytes are discarded, so the buffer of the robot never fills up
+ * between uploads. The port is looked up when it is opened, a port that vanished in the meantime fails there.
+ */
+public class SerialTransport implements SerialPortDataListener {
+    private static final Logger LOG = LoggerFactory.getLogger(SerialTransport.class);
+
+    /**
+     * Gets the bytes received by a transport.
+     */
+    public interface Receiver {
+        /**
+         * Called on the thread of jSerialComm for the bytes that arrived.
+         *
+         * @param data the buffer of the transport, only valid during the call
+         * @param length the number of received bytes
+         */
+        void receive(byte[] data, int length);
+
+        /**
+         * Called if the robot was disconnected.
+         */
+        default void disconnected() {
+        }
+    }
+
+    private final String portName;
+    private final int baudRate;
+    private final byte[] buffer = new byte[4096];
+    private volatile SerialPort serialPort = null;
+    private volatile Receiver receiver = null;
+
+    /**
+     * @param portName the name of the port without /dev/
+     * @param baudRate the baud rate of the robot
+     */
+    public SerialTransport(String portName, int baudRate) {
+        this.portName = portName;
+        this.baudRate = baudRate;
+    }
+
+    /**
+     * Opens the port if it is not open yet.
+     *
+     * @return whether the port is open
+     * @throws SerialPortInvalidPortException if the port does not exist
+     */
+    public synchronized boolean open() {
+        if ( this.serialPort == null ) {
+            SerialPort port = SerialPort.getCommPort((SystemUtils.IS_OS_WINDOWS ? "" : "/dev/") + this.portName);
+            port.setBaudRate(this.baudRate);
+            this.serialPort = port;
+        }
+        if ( !this.serialPort.isOpen() ) {
+            if ( !this.serialPort.openPort() ) {
+                LOG.error("Could not open {}", this.serialPort.getSystemPortName());
+                return false;
+            }
+            this.serialPort.addDataListener(this);
+            LOG.info("Serial Communication is initialized: {} {} {}",
+                this.serialPort.getSystemPortName(),
+                this.serialPort.getDescriptivePortName(),
+                this.serialPort.getPortDescription());
+        }
+        return true;
+    }
+
+    /**
+     * Closes the port, the next {@link #open()} looks it up again.
+     */
+    public synchronized void close() {
+        if ( this.serialPort == null ) {
+            return;
+        }
+        if ( this.serialPort.isOpen() ) {
+            this.serialPort.removeDataListener(); // does not wait for the event thread if called by it
+            this.serialPort.closePort();
+        }
+        this.serialPort = null;
+    }
+
+    /**
+     * Sets the receiver of the following bytes.
+     *
+     * @param receiver the receiver, null to discard the bytes
+     */
+    public void setReceiver(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Writes all bytes to the robot.
+     *
+     * @param data the bytes
+     * @param length the number of bytes to write
+     * @return whether all bytes were written
+     */
+    public boolean write(byte[] data, int length) {
+        SerialPort port = this.serialPort;
+        return (port != null) && (port.writeBytes(data, length) == length);
+    }
+
+    @Override
+    public int getListeningEvents() {
+        return SerialPort.LISTENING_EVENT_DATA_AVAILABLE | SerialPort.LISTENING_EVENT_PORT_DISCONNECTED;
+    }
+
+    @Override
+    public void serialEvent(SerialPortEvent event) {
+        this.serialEvent(event.getEventType());
+    }
+
+    void serialEvent(int eventType) {
+        Receiver current = this.receiver;
+        if ( eventType == SerialPort.LISTENING_EVENT_PORT_DISCONNECTED ) {
+            LOG.info("{} was disconnected", this.portName);
+            this.close(); // the handle is dead, after a replug the port has to be opened again
+            if ( current != null ) {
+                current.disconnected();
+            }
+            return;
+        }
+        int available;
+        while ( (available = this.bytesAvailable()) > 0 ) {
+            int bytesRead = this.readBytes(this.buffer, Math.min(available, this.buffer.length));
+            if ( bytesRead <= 0 ) {
+                break;
+            }
+            if ( current != null ) {
+                current.receive(this.buffer, bytesRead);
+            }
+        }
+        if ( available < 0 ) {
+            LOG.info("{} cannot be read anymore", this.portName);
+            this.close();
+            if ( current != null ) {
+                current.disconnected();
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes that can be read without blocking, negative if the port is not usable anymore
+     */
+    int bytesAvailable() {
+        SerialPort port = this.serialPort;
+        return (port != null) ? port.bytesAvailable() : 0;
+    }
+
+    int readBytes(byte[] data, int length) {
+        SerialPort port = this.serialPort;
+        return (port != null) ? port.readBytes(data, length) : 0;
+    }
+}
@@ -0,0 +1,231 @@
+package de.fhg.iais.roberta.connection.wired;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import de.fhg.iais.roberta.util.ExecutionHelper;
+import de.fhg.iais.roberta.util.SerialDevice;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Keeps the table of USB serial devices up to date on Linux. The device nodes in /dev are watched, a tty that appears is looked up in sysfs once and
+ * a tty that disappears is removed. The sysfs tree is only scanned completely at the start and if events were lost. The listeners are told about
+ * every change of the table, and when the watching stops.
+ */
+final class UsbHotplugMonitor {
+    private static final Logger LOG = LoggerFactory.getLogger(UsbHotplugMonitor.class);
+
+    private static final Path DEV = Paths.get("/dev");
+    private static final Path SYS = Paths.get("/sys");
+
+    private final Map<String, SerialDevice> devices = new ConcurrentHashMap<>();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean running = false;
+    private volatile long version = 0L; // counts the changes of the table
+
+    private UsbHotplugMonitor() {
+    }
+
+    private static final class InstanceHolder {
+        private static final UsbHotplugMonitor instance = new UsbHotplugMonitor();
+
+        static {
+            instance.start();
+        }
+    }
+
+    static UsbHotplugMonitor getInstance() {
+        return InstanceHolder.instance;
+    }
+
+    /**
+     * Returns the USB serial devices that are currently plugged in.
+     *
+     * @return the devices, null if the device nodes can not be watched and the devices have to be scanned
+     */
+    List<SerialDevice> getDevices() {
+        return this.running ? new ArrayList<>(this.devices.values()) : null;
+    }
+
+    /**
+     * Returns whether the device nodes are watched, i.e. whether the listeners are told about plugged in devices.
+     *
+     * @return whether the table is kept up to date
+     */
+    boolean isWatching() {
+        return this.running;
+    }
+
+    /**
+     * Returns the number of changes of the table, the table only changed if the number did.
+     *
+     * @return the version of the table
+     */
+    long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Registers a listener that is called on the watch thread when a USB serial device was plugged in or unplugged.
+     *
+     * @param listener the listener
+     */
+    void addListener(Runnable listener) {
+        this.listeners.add(listener);
+    }
+
+    private void start() {
+        try {
+            WatchService watchService = FileSystems.getDefault().newWatchService();
+            DEV.register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+            this.rescan();
+            this.running = true;
+            ExecutionHelper.getInstance().startThread("ora-usb-hotplug", () -> this.watch(watchService));
+        } catch ( IOException | UnsupportedOperationException e ) {
+            LOG.warn("Could not watch {} for USB devices, scanning instead: {}", DEV, e.getMessage());
+        }
+    }
+
+    private void watch(WatchService watchService) {
+        try {
+            while ( true ) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for ( WatchEvent<?> event : key.pollEvents() ) {
+                    if ( event.kind() == OVERFLOW ) {
+                        changed |= this.rescan();
+                        continue;
+                    }
+                    String name = event.context().toString();
+                    if ( event.kind() == ENTRY_DELETE ) {
+                        if ( this.devices.remove(name) != null ) {
+                            LOG.info("USB device at {} was unplugged", name);
+                            changed = true;
+                        }
+                    } else {
+                        SerialDevice device = lookup(SYS, name);
+                        if ( device != null ) {
+                            LOG.info("USB device {}:{} was plugged in at {}", device.vendorId, device.productId, name);
+                            this.devices.put(name, device);
+                            changed = true;
+                        }
+                    }
+                }
+                if ( changed ) {
+                    this.notifyListeners();
+                }
+                if ( !key.reset() ) {
+                    break;
+                }
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        } finally {
+            LOG.warn("Stopped watching {} for USB devices", DEV);
+            this.running = false;
+            this.notifyListeners(); // the devices are scanned from now on
+            try {
+                watchService.close();
+            } catch ( IOException e ) {
+                LOG.debug("Could not close the watch service: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return whether the table changed
+     */
+    private boolean rescan() {
+        Map<String, SerialDevice> scanned = scan(SYS);
+        boolean changed = !scanned.equals(this.devices);
+        this.devices.keySet().retainAll(scanned.keySet());
+        this.devices.putAll(scanned);
+        return changed;
+    }
+
+    private void notifyListeners() {
+        this.version++; // only written by the watch thread
+        for ( Runnable listener : this.listeners ) {
+            try {
+                listener.run();
+            } catch ( RuntimeException e ) {
+                LOG.error("USB device listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Scans all ttys in sysfs for USB devices.
+     *
+     * @param sys the root of sysfs
+     * @return the USB devices by their tty
+     */
+    static Map<String, SerialDevice> scan(Path sys) {
+        Map<String, SerialDevice> scanned = new HashMap<>();
+        try (DirectoryStream<Path> ttys = Files.newDirectoryStream(sys.resolve("class").resolve("tty"))) {
+            for ( Path tty : ttys ) {
+                String name = tty.getFileName().toString();
+                SerialDevice device = lookup(sys, name);
+                if ( device != null ) {
+                    scanned.put(name, device);
+                }
+            }
+        } catch ( IOException e ) {
+            LOG.warn("Could not scan {} for USB devices: {}", sys, e.getMessage());
+        }
+        return scanned;
+    }
+
+    /**
+     * Finds the USB device a tty belongs to. The device link of the tty points into the device tree, the USB device with its ids is one of the parents.
+     *
+     * @param sys the root of sysfs
+     * @param name the name of the tty, e.g. ttyACM0
+     * @return the device, null if the tty does not belong to a USB device
+     */
+    static SerialDevice lookup(Path sys, String name) {
+        Path device = sys.resolve("class").resolve("tty").resolve(name).resolve("device");
+        if ( !Files.exists(device) ) {
+            return null;
+        }
+        try {
+            Path root = sys.toRealPath();
+            for ( Path dir = device.toRealPath(); (dir != null) && dir.startsWith(root) && !dir.equals(root); dir = dir.getParent() ) {
+                Path idVendor = dir.resolve("idVendor");
+                Path idProduct = dir.resolve("idProduct");
+                if ( Files.exists(idVendor) && Files.exists(idProduct) ) {
+                    return new SerialDevice(readFirstLine(idVendor), readFirstLine(idProduct), name, "");
+                }
+            }
+        } catch ( IOException e ) {
+            LOG.debug("Could not look up the device of {}: {}", name, e.getMessage());
+        }
+        return null;
+    }
+
+    private static String readFirstLine(Path path) throws IOException {
+        try (Stream<String> lines = Files.lines(path)) {
+            return lines.findFirst().orElseThrow(() -> new IOException("Id could not be read from " + path));
+        }
+    }
+}
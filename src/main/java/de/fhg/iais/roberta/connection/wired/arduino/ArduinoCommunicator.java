@@ -3,20 +3,20 @@ package de.fhg.iais.roberta.connection.wired.arduino;
 import static de.fhg.iais.roberta.util.PythonRequireHelper.requireEsptool;
 
 import java.io.File;
-import java.io.IOException;
-import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fazecast.jSerialComm.SerialPort;
+
 import de.fhg.iais.roberta.connection.wired.IWiredRobot;
 import de.fhg.iais.roberta.connection.wired.SerialRobotDetector;
 import de.fhg.iais.roberta.connection.wired.WiredRobotType;
@@ -27,12 +27,15 @@ import de.fhg.iais.roberta.util.ZipHelper;
 class ArduinoCommunicator {
     private static final Logger LOG = LoggerFactory.getLogger(ArduinoCommunicator.class);
 
+    private static final long RESET_PULSE_MS = 100;
+
     private final String avrdudePath;
     private final String avrdudeConfPath;
     private final String bossacPath;
     private String esptoolPath = "";
 
     private final IWiredRobot robot;
+    private volatile UploadJob currentUpload = null;
 
     ArduinoCommunicator(IWiredRobot robot) {
         this.robot = robot;
@@ -92,21 +95,21 @@ class ArduinoCommunicator {
                 case MBOT:
                     addAvrDudeStdParams(args, avrdudePath, avrdudeConfPath, filePath, portName);
                     args.add("-patmega328p", "-carduino");
-                    return runProcessUntilTermination(args, true);
+                    return this.runProcessUntilTermination(portName, args);
                 case MEGA:
                     addAvrDudeStdParams(args, avrdudePath, avrdudeConfPath, filePath, portName);
                     args.add("-patmega2560", "-cwiring");
-                    return runProcessUntilTermination(args, true);
+                    return this.runProcessUntilTermination(portName, args);
                 case BOB3:
                     addAvrDudeStdParams(args, avrdudePath, avrdudeConfPath, filePath, portName);
                     args.add("-patmega88", "-cavrisp2", "-e");
-                    return runProcessUntilTermination(args, true);
+                    return this.runProcessUntilTermination(portName, args);
                 case UNOWIFIREV2:
                     addAvrDudeStdParams(args, avrdudePath, avrdudeConfPath, filePath, "usb");
                     args.add("-patmega4809", "-cxplainedmini_updi", "-e");
                     args.add("-Ufuse2:w:0x01:m", "-Ufuse5:w:0xC9:m", "-Ufuse8:w:0x02:m"); // program fuses
                     args.add("-Uflash:w:" + PropertyHelper.getInstance().getProperty("megaavrPath") + "/bootloaders/atmega4809_uart_bl.hex:i"); // additional bootloader
-                    return runProcessUntilTermination(args, true);
+                    return this.runProcessUntilTermination(portName, args);
                 case FESTOBIONICFLOWER:
                 case FESTOBIONIC:
                     LOG.info("Starting to upload program {} to {}", filePath, portName);
@@ -136,7 +139,7 @@ class ArduinoCommunicator {
                     if ( Files.exists(zipFileSpiffs) ) {
                         args.add("0x291000", zipFileSpiffs.toString());
                     }
-                    return runProcessUntilTermination(args, true);
+                    return this.runProcessUntilTermination(portName, args);
                 case NANO33BLE:
                     LOG.info("Starting to upload program {}, port of running mode {} ...", filePath, portName);
                     ArgsAdder gotoFlash = new ArgsAdder();
@@ -145,18 +148,18 @@ class ArduinoCommunicator {
                     } else {
                         gotoFlash.add("stty", "-F", portName, "1200");
                     }
-                    runProcessUntilTermination(gotoFlash, true);
+                    this.runProcessUntilTermination(portName, gotoFlash);
                     Thread.sleep(500);
                     String portForFlashing =
                         (SystemUtils.IS_OS_WINDOWS ? "" : "/dev/") + SerialRobotDetector.getPortOfConnectedRobotType(WiredRobotType.NANO33BLE);
                     LOG.info("... port of flashing mode {} ", portForFlashing);
                     args.add(this.bossacPath);
                     args.add("-d", "--port=" + portForFlashing, "-U", "-i", "-e", "-w", filePath, "-R");
-                    return runProcessUntilTermination(args, true);
+                    return this.runProcessUntilTermination(portName, args);
                 case ROB3RTA:
                     addAvrDudeStdParams(args, avrdudePath, avrdudeConfPath, filePath, portName);
                     args.add("-patmega328pb", "-cavrisp2", "-e");
-                    return runProcessUntilTermination(args, true);
+                    return this.runProcessUntilTermination(portName, args);
                 default:
                     throw new IllegalStateException("Robot type not supported");
             }
@@ -166,6 +169,60 @@ class ArduinoCommunicator {
         }
     }
 
+    /**
+     * Restarts the program that is already flashed, by pulsing the reset line of boards that are reset through the serial port.
+     * AVR based boards are reset by DTR, ESP32 based boards by RTS.
+     *
+     * @param portName the port of the board
+     * @return true if the board was restarted, false if the board can not be restarted this way and has to be flashed again
+     */
+    boolean restartProgram(String portName) {
+        portName = (SystemUtils.IS_OS_WINDOWS ? "" : "/dev/") + portName; // to hide the parameter, which should not be used
+        boolean resetByRts;
+        switch ( this.robot.getType() ) {
+            case UNO:
+            case NANO:
+            case MEGA:
+            case BOTNROLL:
+            case MBOT:
+                resetByRts = false;
+                break;
+            case FESTOBIONIC:
+            case FESTOBIONICFLOWER:
+                resetByRts = true;
+                break;
+            default:
+                return false;
+        }
+
+        SerialPort serialPort = SerialPort.getCommPort(portName);
+        if ( !serialPort.openPort() ) {
+            LOG.error("Could not open {} to restart the program", portName);
+            return false;
+        }
+        try {
+            if ( resetByRts ) {
+                serialPort.clearDTR();
+                serialPort.setRTS();
+                Thread.sleep(RESET_PULSE_MS);
+                serialPort.clearRTS();
+            } else {
+                serialPort.clearDTR();
+                Thread.sleep(RESET_PULSE_MS);
+                serialPort.setDTR();
+                Thread.sleep(RESET_PULSE_MS);
+                serialPort.clearDTR();
+            }
+            LOG.info("Restarted the program on {}", portName);
+            return true;
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            serialPort.closePort();
+        }
+    }
+
     /**
      * add the avrdudePath and some standard parameter to the arg list
      *
@@ -184,29 +241,60 @@ class ArduinoCommunicator {
         args.add("-P" + portName);
     }
 
-    private static Pair<Integer, String> runProcessUntilTermination(ArgsAdder args, boolean log) {
-        try {
-            if ( log ) {
-                LOG.info("command to be executed: {}", args.toString());
-            }
+    /**
+     * Runs the process on the {@link UploadScheduler} and waits for it. Uploads to other robots may run at the same time.
+     *
+     * @param portName the port the process writes to, uploads to the same port are queued
+     * @param args the command that starts the process
+     * @return the exit code of the process and the end of its output
+     */
+    private Pair<Integer, String> runProcessUntilTermination(String portName, ArgsAdder args) {
+        LOG.info("command to be executed: {}", args.toString());
+        return this.awaitUpload(UploadScheduler.getInstance().submit(portName, args.getArgs()));
+    }
 
-            ProcessBuilder processBuilder = new ProcessBuilder(args.getArgs());
-            processBuilder.inheritIO();
-            Process p = processBuilder.start();
-            int eCode = p.waitFor();
-            String errorOutput = IOUtils.toString(p.getErrorStream(), Charset.defaultCharset());
-            if ( log ) {
-                if ( eCode > 0 ) {
-                    LOG.error("process to flash an arduino failed: {}, {}", eCode, errorOutput);
-                } else if ( log ) {
-                    LOG.info("command execution was successful");
-                }
+    /**
+     * Waits for the scheduled upload, it can be cancelled by {@link #cancelUpload()} meanwhile.
+     *
+     * @param job the scheduled upload
+     * @return the exit code of the process and the end of its output
+     */
+    Pair<Integer, String> awaitUpload(UploadJob job) {
+        String portName = job.getPortName();
+        this.currentUpload = job;
+        job.registerProgressListener(progress -> {
+            if ( (progress % 10) == 0 ) {
+                LOG.info("Upload to {} at {}%", portName, progress);
             }
-            return new Pair<>(eCode, errorOutput);
-        } catch ( IOException | InterruptedException e ) {
-            String msg = "Error while running a process to flash an arduino: " + e.getMessage();
+        });
+        try {
+            Pair<Integer, String> result = job.getResult().get();
+            if ( result.getFirst() != 0 ) {
+                LOG.error("process to flash an arduino failed: {}, {}", result.getFirst(), result.getSecond());
+            } else {
+                LOG.info("command execution was successful");
+            }
+            return result;
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            job.cancel();
+            return new Pair<>(1, "Error while running a process to flash an arduino: " + e.getMessage());
+        } catch ( ExecutionException e ) {
+            String msg = "Error while running a process to flash an arduino: " + e.getCause().getMessage();
             LOG.error(msg);
             return new Pair<>(1, msg);
+        } finally {
+            this.currentUpload = null;
+        }
+    }
+
+    /**
+     * Cancels the running or queued upload of this robot, if there is one.
+     */
+    void cancelUpload() {
+        UploadJob job = this.currentUpload;
+        if ( job != null ) {
+            job.cancel();
         }
     }
 
@@ -5,14 +5,13 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.function.Function;
 
 import de.fhg.iais.roberta.connection.AbstractConnector;
 import de.fhg.iais.roberta.util.OraTokenGenerator;
 import de.fhg.iais.roberta.util.Pair;
+import de.fhg.iais.roberta.util.ProgramCache;
 
 /**
  * Connector class for Arduino robots. Handles state and communication between robot, connector and server.
@@ -20,17 +19,24 @@ import de.fhg.iais.roberta.util.Pair;
 public class ArduinoConnector extends AbstractConnector<Arduino> {
     private static final Logger LOG = LoggerFactory.getLogger(ArduinoConnector.class);
 
-    private ArduinoCommunicator arduinoCommunicator = null;
+    private final Function<Arduino, ArduinoCommunicator> communicatorFactory;
+    private volatile ArduinoCommunicator arduinoCommunicator = null;
+    private ProgramCache.Program flashedProgram = null;
 
     ArduinoConnector(Arduino arduino) {
+        this(arduino, ArduinoCommunicator::new);
+    }
+
+    ArduinoConnector(Arduino arduino, Function<Arduino, ArduinoCommunicator> communicatorFactory) {
         super(arduino);
+        this.communicatorFactory = communicatorFactory;
     }
 
     @Override
     protected void runLoopBody() {
         switch ( this.state ) {
             case DISCOVER:
-                this.arduinoCommunicator = new ArduinoCommunicator(this.robot);
+                this.arduinoCommunicator = this.communicatorFactory.apply(this.robot);
                 if (!this.arduinoCommunicator.isEspInitialized()) {
                     this.reset(State.ERROR_PYTHON_REQUIRE);
                 }
@@ -65,57 +71,7 @@ public class ArduinoConnector extends AbstractConnector<Arduino> {
                 }
                 break;
             case WAIT_FOR_CMD:
-                this.brickData = this.arduinoCommunicator.getDeviceInfo();
-                this.brickData.put(KEY_TOKEN, this.token);
-                this.brickData.put(KEY_CMD, CMD_PUSH);
-                try {
-                    JSONObject response = this.serverCommunicator.pushRequest(this.brickData);
-                    String cmdKey = response.getString(KEY_CMD);
-                    if ( cmdKey.equals(CMD_REPEAT) ) {
-                        break;
-                    } else if ( cmdKey.equals(CMD_DOWNLOAD) ) {
-                        LOG.info("Download user program");
-                        try {
-                            Pair<byte[], String> program = this.serverCommunicator.downloadProgram(this.brickData);
-                            File temp = File.createTempFile(program.getSecond(), "");
-                            temp.deleteOnExit();
-
-                            if ( !temp.exists() ) {
-                                throw new FileNotFoundException("File " + temp.getAbsolutePath() + " does not exist.");
-                            }
-
-                            try (FileOutputStream os = new FileOutputStream(temp)) {
-                                os.write(program.getFirst());
-                            }
-
-                            this.fire(State.WAIT_UPLOAD);
-                            Pair<Integer, String> result = this.arduinoCommunicator.uploadFile(this.robot.getPort(), temp.getAbsolutePath());
-                            if (result.getFirst() != 0) {
-                                this.fire(State.ERROR_UPLOAD_TO_ROBOT.setAdditionalInfo(result.getSecond()));
-                                this.fire(State.WAIT_FOR_CMD);
-                            }
-                        } catch ( FileNotFoundException e ) {
-                            LOG.info("File not found: {}", e.getMessage());
-                            this.fire(State.ERROR_UPLOAD_TO_ROBOT);
-                            this.fire(State.WAIT_FOR_CMD);
-                        } catch ( IOException io ) {
-                            LOG.info("Download and run failed: {}", io.getMessage());
-                            LOG.info("Do not give up yet - make the next push request");
-                            this.fire(State.ERROR_UPLOAD_TO_ROBOT);
-                            this.fire(State.WAIT_FOR_CMD);
-                        }
-                    } else if ( cmdKey.equals(CMD_CONFIGURATION) ) {
-                        LOG.info("Configuration");
-                    } else if ( cmdKey.equals(CMD_UPDATE) ) {
-                        LOG.info("Firmware update not necessary and not supported!");
-                    } else if ( cmdKey.equals(CMD_ABORT) ) {
-                        LOG.error("Unexpected response from server: {}", cmdKey);
-                        this.reset(State.ERROR_HTTP);
-                    }
-                } catch ( JSONException | IOException r ) {
-                    LOG.error("WAIT_FOR_CMD {}", r.getMessage());
-                    this.reset(State.ERROR_HTTP);
-                }
+                this.push();
                 break;
             case WAIT_UPLOAD:
                 this.fire(State.WAIT_FOR_CMD);
@@ -124,4 +80,70 @@ public class ArduinoConnector extends AbstractConnector<Arduino> {
                 break;
         }
     }
+
+    @Override
+    protected byte[] createPushRequest() {
+        return this.getRequestEncoder(this.arduinoCommunicator::getDeviceInfo).encode(CMD_PUSH);
+    }
+
+    @Override
+    protected void handlePushResponse(JSONObject response) {
+        String cmdKey = response.getString(KEY_CMD);
+        if ( cmdKey.equals(CMD_DOWNLOAD) ) {
+            LOG.info("Download user program");
+            try {
+                JSONObject downloadRequest = this.getRequestEncoder(this.arduinoCommunicator::getDeviceInfo).toJson(CMD_PUSH);
+                ProgramCache.Program program = this.serverCommunicator.downloadProgramToCache(downloadRequest, this.flashedProgram);
+
+                this.fire(State.WAIT_UPLOAD);
+                if ( program.equals(this.flashedProgram) && this.arduinoCommunicator.restartProgram(this.robot.getPort()) ) {
+                    LOG.info("Program {} is already on the robot, restarted it", program);
+                    return;
+                }
+                ProgramCache.getInstance().pin(program); // keeps the program readable while it is uploaded
+                try {
+                    this.setFlashedProgram(null);
+                    Pair<Integer, String> result = this.arduinoCommunicator.uploadFile(this.robot.getPort(), program.getPath().toString());
+                    if (result.getFirst() != 0) {
+                        this.fire(State.ERROR_UPLOAD_TO_ROBOT, result.getSecond());
+                        this.fire(State.WAIT_FOR_CMD);
+                    } else {
+                        this.setFlashedProgram(program);
+                    }
+                } finally {
+                    ProgramCache.getInstance().unpin(program);
+                }
+            } catch ( IOException io ) {
+                LOG.info("Download and run failed: {}", io.getMessage());
+                LOG.info("Do not give up yet - make the next push request");
+                this.fire(State.ERROR_UPLOAD_TO_ROBOT);
+                this.fire(State.WAIT_FOR_CMD);
+            }
+        } else if ( cmdKey.equals(CMD_CONFIGURATION) ) {
+            LOG.info("Configuration");
+        } else if ( cmdKey.equals(CMD_UPDATE) ) {
+            LOG.info("Firmware update not necessary and not supported!");
+        } else if ( cmdKey.equals(CMD_ABORT) ) {
+            LOG.error("Unexpected response from server: {}", cmdKey);
+            this.reset(State.ERROR_HTTP);
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if ( this.arduinoCommunicator != null ) {
+            this.arduinoCommunicator.cancelUpload();
+        }
+        this.setFlashedProgram(null);
+    }
+
+    /**
+     * Pins the program that is on the robot in the cache, so that it can be restarted later. The previous one is released.
+     */
+    private synchronized void setFlashedProgram(ProgramCache.Program program) {
+        ProgramCache.getInstance().pin(program);
+        ProgramCache.getInstance().unpin(this.flashedProgram);
+        this.flashedProgram = program;
+    }
 }
@@ -0,0 +1,53 @@
+package de.fhg.iais.roberta.connection.wired.arduino;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the end of the output of a flashing process, it is shown to the user if the upload failed. The progress bars of avrdude and the percentage
+ * lines of esptool and bossac are left out, so only the lines that may explain the error remain. Long lines are cut.
+ */
+final class UploadErrorOutput {
+    private static final int MAX_LINES = 10;
+    private static final int MAX_LINE_LENGTH = 200;
+    private static final Pattern PROGRESS_LINE = Pattern.compile("(Reading|Writing) \\||\\d{1,3} ?%");
+
+    private final Deque<String> lines = new ArrayDeque<>(MAX_LINES);
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * Reads the next character of the output.
+     *
+     * @param c the next character
+     */
+    void accept(char c) {
+        if ( (c == '\r') || (c == '\n') ) {
+            this.endLine();
+        } else if ( this.line.length() < MAX_LINE_LENGTH ) {
+            this.line.append(c);
+        }
+    }
+
+    private void endLine() {
+        String completed = this.line.toString().trim();
+        this.line.setLength(0);
+        if ( completed.isEmpty() || PROGRESS_LINE.matcher(completed).find() ) {
+            return;
+        }
+        if ( this.lines.size() == MAX_LINES ) {
+            this.lines.removeFirst();
+        }
+        this.lines.addLast(completed);
+    }
+
+    /**
+     * Returns the kept lines, called once the process terminated.
+     *
+     * @return the last lines of the output
+     */
+    String getLines() {
+        this.endLine();
+        return String.join("\n", this.lines);
+    }
+}
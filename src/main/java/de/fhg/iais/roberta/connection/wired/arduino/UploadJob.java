@@ -0,0 +1,153 @@
+package de.fhg.iais.roberta.connection.wired.arduino;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import de.fhg.iais.roberta.util.IOraListener;
+import de.fhg.iais.roberta.util.Pair;
+
+/**
+ * A flashing process scheduled by the {@link UploadScheduler}. The progress of the process is reported to the listeners while it runs, the end of its
+ * output without the progress lines is returned as the error output.
+ */
+public final class UploadJob {
+    private static final Logger LOG = LoggerFactory.getLogger(UploadJob.class);
+
+    private static final String CANCELLED = "The upload was cancelled.";
+
+    /**
+     * Starts the process of a job.
+     */
+    @FunctionalInterface
+    interface ProcessStarter {
+        Process start() throws IOException;
+    }
+
+    private final String portName;
+    private final ProcessStarter processStarter;
+    private final Collection<IOraListener<Integer>> progressListeners = new CopyOnWriteArrayList<>();
+    private final CompletableFuture<Pair<Integer, String>> result = new CompletableFuture<>();
+
+    private volatile int progress = 0;
+    private boolean cancelled = false;
+    private Process process = null;
+
+    UploadJob(String portName, List<String> command) {
+        this(portName, createProcessStarter(new ArrayList<>(command)));
+    }
+
+    UploadJob(String portName, ProcessStarter processStarter) {
+        this.portName = portName;
+        this.processStarter = processStarter;
+    }
+
+    private static ProcessStarter createProcessStarter(List<String> command) {
+        return () -> new ProcessBuilder(command).redirectErrorStream(true).start();
+    }
+
+    public String getPortName() {
+        return this.portName;
+    }
+
+    /**
+     * Returns the progress of the upload.
+     *
+     * @return the progress in percent
+     */
+    public int getProgress() {
+        return this.progress;
+    }
+
+    /**
+     * Registers a listener for the progress of the upload in percent. It is called on the thread that runs the upload.
+     *
+     * @param listener the listener that should be added
+     */
+    public void registerProgressListener(IOraListener<Integer> listener) {
+        this.progressListeners.add(listener);
+    }
+
+    /**
+     * Returns the result of the upload, the exit code of the process and the end of its output.
+     *
+     * @return a future that is completed when the process terminated or the job was cancelled
+     */
+    public CompletableFuture<Pair<Integer, String>> getResult() {
+        return this.result;
+    }
+
+    /**
+     * Cancels the upload. A queued upload does not start, a running process is destroyed.
+     */
+    public void cancel() {
+        Process running;
+        synchronized ( this ) {
+            this.cancelled = true;
+            running = this.process;
+        }
+        if ( running != null ) {
+            LOG.info("Cancelling the upload to {}", this.portName);
+            running.destroyForcibly();
+        } else {
+            this.result.complete(new Pair<>(1, CANCELLED));
+        }
+    }
+
+    void execute() {
+        Process started;
+        try {
+            synchronized ( this ) {
+                if ( this.cancelled ) {
+                    this.result.complete(new Pair<>(1, CANCELLED));
+                    return;
+                }
+                this.process = this.processStarter.start();
+                started = this.process;
+            }
+
+            UploadErrorOutput output = new UploadErrorOutput();
+            UploadProgressParser progressParser = new UploadProgressParser();
+            try (Reader reader = new InputStreamReader(started.getInputStream(), Charset.defaultCharset())) {
+                for ( int c = reader.read(); c != -1; c = reader.read() ) {
+                    output.accept((char) c);
+                    this.updateProgress(progressParser.accept((char) c));
+                }
+            }
+            int exitCode = started.waitFor();
+            synchronized ( this ) {
+                if ( this.cancelled ) {
+                    this.result.complete(new Pair<>(1, CANCELLED));
+                    return;
+                }
+            }
+            this.result.complete(new Pair<>(exitCode, output.getLines()));
+        } catch ( IOException e ) {
+            synchronized ( this ) {
+                this.result.complete(new Pair<>(1, this.cancelled ? CANCELLED : ("Error while running a process to flash an arduino: " + e.getMessage())));
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            this.cancel();
+            this.result.complete(new Pair<>(1, CANCELLED));
+        }
+    }
+
+    private void updateProgress(int progress) {
+        if ( progress != this.progress ) {
+            this.progress = progress;
+            for ( IOraListener<Integer> listener : this.progressListeners ) {
+                listener.update(progress);
+            }
+        }
+    }
+}
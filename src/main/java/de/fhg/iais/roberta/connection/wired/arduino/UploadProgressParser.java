@@ -0,0 +1,47 @@
+package de.fhg.iais.roberta.connection.wired.arduino;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the progress of an upload from the output of the flashing tools. avrdude draws a bar of 50 '#' after "Writing |" without line breaks, esptool
+ * and bossac print the percentage at the end of each line.
+ */
+final class UploadProgressParser {
+    private static final Pattern PERCENTAGE = Pattern.compile("(\\d{1,3}) ?%");
+    private static final String AVRDUDE_WRITING = "Writing |";
+    private static final int AVRDUDE_BAR_LENGTH = 50;
+
+    private final StringBuilder line = new StringBuilder();
+    private int progress = 0;
+
+    /**
+     * Reads the next character of the output.
+     *
+     * @param c the next character
+     * @return the progress so far in percent
+     */
+    int accept(char c) {
+        if ( (c == '\r') || (c == '\n') ) {
+            Matcher matcher = PERCENTAGE.matcher(this.line);
+            while ( matcher.find() ) {
+                this.updateProgress(Integer.parseInt(matcher.group(1)));
+            }
+            this.line.setLength(0);
+        } else {
+            this.line.append(c);
+            if ( c == '#' ) {
+                int barStart = this.line.indexOf(AVRDUDE_WRITING);
+                if ( barStart >= 0 ) {
+                    int hashes = this.line.length() - barStart - AVRDUDE_WRITING.length() - 1; // the bar starts after a space
+                    this.updateProgress((hashes * 100) / AVRDUDE_BAR_LENGTH);
+                }
+            }
+        }
+        return this.progress;
+    }
+
+    private void updateProgress(int progress) {
+        this.progress = Math.max(this.progress, Math.min(progress, 100));
+    }
+}
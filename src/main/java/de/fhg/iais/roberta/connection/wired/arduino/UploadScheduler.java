@@ -0,0 +1,88 @@
+package de.fhg.iais.roberta.connection.wired.arduino;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+import de.fhg.iais.roberta.util.ExecutionHelper;
+import de.fhg.iais.roberta.util.PropertyHelper;
+
+/**
+ * Runs the flashing processes of all wired robots. Uploads to different ports run at the same time, up to the configured number of processes.
+ * Uploads to the same port are queued and run one after another.
+ */
+public final class UploadScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(UploadScheduler.class);
+
+    private final Semaphore processes;
+    private final Executor executor;
+    private final Map<String, CompletableFuture<Void>> portQueues = new HashMap<>(); // guarded by this
+
+    UploadScheduler(int maxProcesses, Executor executor) {
+        this.processes = new Semaphore(maxProcesses, true);
+        this.executor = executor;
+    }
+
+    private static final class InstanceHolder {
+        private static final UploadScheduler instance =
+            new UploadScheduler(Integer.parseInt(PropertyHelper.getInstance().getProperty("uploadConcurrency")), ExecutionHelper.getInstance().getIoExecutor());
+    }
+
+    public static UploadScheduler getInstance() {
+        return InstanceHolder.instance;
+    }
+
+    /**
+     * Schedules the process after all uploads that were submitted for the same port before.
+     *
+     * @param portName the port the process writes to
+     * @param command the command that starts the process
+     * @return the job of the upload
+     */
+    public UploadJob submit(String portName, List<String> command) {
+        return this.submit(new UploadJob(portName, command));
+    }
+
+    UploadJob submit(UploadJob job) {
+        String portName = job.getPortName();
+        synchronized ( this ) {
+            CompletableFuture<Void> previous = this.portQueues.getOrDefault(portName, CompletableFuture.completedFuture(null));
+            CompletableFuture<Void> next = previous.handleAsync((result, e) -> {
+                this.run(job);
+                return null;
+            }, this.executor);
+            this.portQueues.put(portName, next);
+            next.whenComplete((result, e) -> this.removeQueue(portName, next));
+        }
+        return job;
+    }
+
+    private synchronized void removeQueue(String portName, CompletableFuture<Void> queue) {
+        this.portQueues.remove(portName, queue);
+    }
+
+    private void run(UploadJob job) {
+        if ( job.getResult().isDone() ) {
+            return; // cancelled while queued
+        }
+        try {
+            this.processes.acquire();
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            job.cancel();
+            return;
+        }
+        try {
+            LOG.info("Starting upload to {}", job.getPortName());
+            job.execute();
+        } finally {
+            this.processes.release();
+        }
+    }
+}
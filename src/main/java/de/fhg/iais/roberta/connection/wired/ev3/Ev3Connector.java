@@ -6,10 +6,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
 
 import de.fhg.iais.roberta.connection.AbstractConnector;
 import de.fhg.iais.roberta.connection.IConnector;
 import de.fhg.iais.roberta.connection.ServerCommunicator;
+import de.fhg.iais.roberta.util.ExecutionHelper;
 import de.fhg.iais.roberta.util.OraTokenGenerator;
 import de.fhg.iais.roberta.util.Pair;
 import de.fhg.iais.roberta.util.PropertyHelper;
@@ -28,6 +37,7 @@ public class Ev3Connector extends AbstractConnector<Ev3> {
     private static final Logger LOG = LoggerFactory.getLogger(Ev3Connector.class);
 
     private static final String brickIp = PropertyHelper.getInstance().getProperty("brickIp");
+    private static final long POLL_INTERVAL = 250L;
 
     private final Ev3Communicator ev3comm;
 
@@ -119,77 +129,128 @@ public class Ev3Connector extends AbstractConnector<Ev3> {
                 }
                 break;
             case WAIT_FOR_CMD:
+                this.push();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    protected long getWaitTime(State state) {
+        switch ( state ) {
+            case DISCOVER:
+            case WAIT_EXECUTION:
+            case WAIT_FOR_CONNECT_BUTTON_PRESS:
+                return POLL_INTERVAL; // the brick does not notify, check it regularly
+            default:
+                return super.getWaitTime(state);
+        }
+    }
+
+    @Override
+    protected byte[] createPushRequest() {
+        try {
+            // the brick data contains the battery level and has to be rendered every time
+            this.brickData = this.ev3comm.pushToBrick(CMD_REPEAT);
+            this.brickData.put(KEY_TOKEN, this.token);
+            this.brickData.put(KEY_CMD, CMD_PUSH);
+            return this.brickData.toString().getBytes(StandardCharsets.UTF_8);
+        } catch ( IOException e ) {
+            LOG.info("{} {}", State.WAIT_FOR_CMD, e.getMessage());
+            this.reset(State.ERROR_BRICK);
+            return null;
+        }
+    }
+
+    @Override
+    protected void handlePushResponse(JSONObject response) {
+        String responseCommand = response.getString(KEY_CMD);
+        switch ( responseCommand ) {
+            case CMD_REPEAT:
+                break;
+            case CMD_ABORT:
+                this.close();
+                break;
+            case CMD_UPDATE:
+                LOG.info("Execute firmware update");
+                LOG.info(this.brickData.toString());
+                String lejosVersion = "";
+                if ( this.brickData.getString("firmwarename").equals("ev3lejosv1") ) {
+                    lejosVersion = "v1/";
+                }
                 try {
-                    this.brickData = this.ev3comm.pushToBrick(CMD_REPEAT);
-                    this.brickData.put(KEY_TOKEN, this.token);
-                    this.brickData.put(KEY_CMD, CMD_PUSH);
+                    this.updateFirmware(lejosVersion);
+                    this.ev3comm.restartBrick();
+                    LOG.info("Firmware update successful. Restarting EV3 now!");
+                    this.reset(null);
                 } catch ( IOException e ) {
-                    LOG.info("{} {}", State.WAIT_FOR_CMD, e.getMessage());
-                    this.reset(State.ERROR_BRICK);
-                    break;
+                    LOG.info("{} Brick update failed {}", State.WAIT_FOR_CMD, e.getMessage());
+                    this.reset(State.ERROR_UPDATE);
                 }
-                String responseCommand;
+                break;
+            case CMD_DOWNLOAD:
+                LOG.info("Download user program");
                 try {
-                    responseCommand = this.serverCommunicator.pushRequest(this.brickData).getString(KEY_CMD);
-                } catch ( IOException | JSONException servererror ) {
-                    // continue to default block
-                    LOG.info("{} Server response not ok {}", State.WAIT_FOR_CMD, servererror.getMessage());
-                    this.reset(State.ERROR_HTTP);
-                    break;
-                }
-                switch ( responseCommand ) {
-                    case CMD_REPEAT:
-                        break;
-                    case CMD_ABORT:
-                        this.close();
-                        break;
-                    case CMD_UPDATE:
-                        LOG.info("Execute firmware update");
-                        LOG.info(this.brickData.toString());
-                        String lejosVersion = "";
-                        if ( this.brickData.getString("firmwarename").equals("ev3lejosv1") ) {
-                            lejosVersion = "v1/";
-                        }
-                        try {
-                            for ( String fwfile : this.fwfiles ) {
-                                Pair<byte[], String> firmware = this.serverCommunicator.downloadFirmwareFile(lejosVersion + fwfile);
-                                this.ev3comm.uploadFirmwareFile(firmware.getFirst(), firmware.getSecond());
-                            }
-                            this.ev3comm.restartBrick();
-                            LOG.info("Firmware update successful. Restarting EV3 now!");
-                            this.reset(null);
-                        } catch ( IOException e ) {
-                            LOG.info("{} Brick update failed {}", State.WAIT_FOR_CMD, e.getMessage());
-                            this.reset(State.ERROR_UPDATE);
-                        }
-                        break;
-                    case CMD_DOWNLOAD:
-                        LOG.info("Download user program");
-                        try {
-                            Pair<byte[], String> program = this.serverCommunicator.downloadProgram(this.brickData);
-                            this.ev3comm.uploadProgram(program.getFirst(), program.getSecond());
-                            this.fire(State.WAIT_EXECUTION);
-                        } catch ( IOException e ) {
-                            // do not give up the brick, try another push request
-                            // user has to click on run button again
-                            LOG.info("{} Download file failed {}", State.WAIT_FOR_CMD, e.getMessage());
-                            this.fire(State.WAIT_FOR_CMD);
-                        }
-                        break;
-                    case CMD_CONFIGURATION:
-                        LOG.warn("Command {} unused, ignore and continue push!", responseCommand);
-                        break;
-                    default:
-                        LOG.warn("Command {} unknown", responseCommand);
-                        this.reset(null);
-                        break;
+                    Pair<byte[], String> program = this.serverCommunicator.downloadProgram(this.brickData);
+                    this.ev3comm.uploadProgram(program.getFirst(), program.getSecond());
+                    this.fire(State.WAIT_EXECUTION);
+                } catch ( IOException e ) {
+                    // do not give up the brick, try another push request
+                    // user has to click on run button again
+                    LOG.info("{} Download file failed {}", State.WAIT_FOR_CMD, e.getMessage());
+                    this.fire(State.WAIT_FOR_CMD);
                 }
                 break;
+            case CMD_CONFIGURATION:
+                LOG.warn("Command {} unused, ignore and continue push!", responseCommand);
+                break;
             default:
+                LOG.warn("Command {} unknown", responseCommand);
+                this.reset(null);
                 break;
         }
     }
 
+    /**
+     * Downloads all firmware files at the same time and uploads each one to the brick as soon as it arrived. The brick is only accessed by this thread,
+     * so the uploads stay sequential.
+     *
+     * @param lejosVersion the version prefix of the firmware files
+     * @throws IOException if a download or an upload failed
+     */
+    private void updateFirmware(String lejosVersion) throws IOException {
+        CompletionService<Pair<byte[], String>> downloads = new ExecutorCompletionService<>(ExecutionHelper.getInstance().getIoExecutor());
+        List<Future<Pair<byte[], String>>> futures = new ArrayList<>(this.fwfiles.length);
+        try {
+            for ( String fwfile : this.fwfiles ) {
+                futures.add(downloads.submit(() -> this.serverCommunicator.downloadFirmwareFile(lejosVersion + fwfile)));
+            }
+            for ( int i = 0; i < this.fwfiles.length; i++ ) {
+                Pair<byte[], String> firmware = downloads.take().get();
+                this.ev3comm.uploadFirmwareFile(firmware.getFirst(), firmware.getSecond());
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Firmware update was interrupted");
+        } catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof IOException ) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            for ( Future<Pair<byte[], String>> future : futures ) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    @Override
+    protected void handlePushError(Throwable e) {
+        LOG.info("{} Server response not ok {}", State.WAIT_FOR_CMD, e.getMessage());
+        this.reset(State.ERROR_HTTP);
+    }
+
     @Override
     public void close() {
         super.close();
@@ -1,30 +1,22 @@
 package de.fhg.iais.roberta.connection.wired.mBot2;
 
-import java.io.File;
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.lang3.ArrayUtils;
-import org.apache.commons.lang3.SystemUtils;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fazecast.jSerialComm.SerialPort;
-import com.fazecast.jSerialComm.SerialPortInvalidPortException;
-
 import de.fhg.iais.roberta.connection.wired.IWiredRobot;
+import de.fhg.iais.roberta.connection.wired.SerialTransport;
 import de.fhg.iais.roberta.util.Pair;
 
 public class Mbot2Communicator {
@@ -33,11 +25,16 @@ public class Mbot2Communicator {
 
     private final IWiredRobot robot;
 
-    private SerialPort serialPort;
-    private final List<byte[]> payloads = new ArrayList<>();
-    private final List<Byte> fileContent = new ArrayList<>();
+    private static final long ANSWER_TIMEOUT = 3000L;
+
+    // the answers of the robot to a frame, the file frames end with 0 if they were written and with 1 if not
+    private static final byte[] ANSWER_MODE_UPLOAD = {(byte) 0xF3, (byte) 0xF6, 0x03, 0x00, 0x0D, 0x00, 0x00, 0x0D, (byte) 0xF4};
+    private static final byte[] ANSWER_FRAME_WRITTEN = {(byte) 0xF3, (byte) 0xFA, 0x07, 0x00, 0x01, 0x00, 0x5E, (byte) 0xF0, 0x01, 0x00, 0x00, 0x50, (byte) 0xF4};
+    private static final byte[] ANSWER_FRAME_FAILED = {(byte) 0xF3, (byte) 0xFA, 0x07, 0x00, 0x01, 0x00, 0x5E, (byte) 0xF0, 0x01, 0x00, 0x01, 0x50, (byte) 0xF4};
 
-    private final Pattern responsePattern = Pattern.compile("f3(fa070001005ef001000((0)|(1))50|(f603000d00000d))f4");
+    private SerialTransport transport;
+    private final List<byte[]> payloads = new ArrayList<>();
+    private byte[] fileContent = new byte[0];
 
 
     public Mbot2Communicator(IWiredRobot robot) {
@@ -54,11 +51,10 @@ public class Mbot2Communicator {
         return deviceInfo;
     }
 
-    public Pair<Integer, String> uploadFile(String portName, String filePath) {
-        portName = (SystemUtils.IS_OS_WINDOWS ? "" : "/dev/") + portName; // to hide the parameter, which should not be used
+    public Pair<Integer, String> uploadFile(String portName, byte[] program) {
         try {
             initSerialPort(portName);
-            extractFileInformation(filePath);
+            this.fileContent = program;
             generatePayloads();
             return sendPayload();
         } catch ( Exception e ) {
@@ -67,22 +63,11 @@ public class Mbot2Communicator {
         }
     }
 
-    private void initSerialPort(String portName) throws SerialPortInvalidPortException {
-        if ( serialPort != null && serialPort.isOpen() ) {
-            serialPort.closePort();
-        }
-        serialPort = SerialPort.getCommPort(portName);
-        serialPort.setBaudRate(115200);
-    }
-
-    private void extractFileInformation(String filePath) throws IOException {
-        File file = new File(filePath);
-        Path path = Paths.get(file.getAbsolutePath());
-        byte[] tmp = Files.readAllBytes(path);
-        fileContent.clear();
-        for ( byte value : tmp ) {
-            this.fileContent.add(value);
+    private void initSerialPort(String portName) {
+        if ( transport != null ) {
+            transport.close();
         }
+        transport = new SerialTransport(portName, 115200);
     }
 
     private void generatePayloads() {
@@ -139,7 +124,7 @@ public class Mbot2Communicator {
         List<Byte> frame = new ArrayList<>();
         List<Byte> data = new ArrayList<>();
         String fileName = "/flash/main.py";
-        int fileSize = this.fileContent.size();
+        int fileSize = this.fileContent.length;
         byte instructionId = 0x01;
         byte fileType = 0x00;
         byte[] sizeByte = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(fileSize).array();
@@ -168,16 +153,18 @@ public class Mbot2Communicator {
         byte instructionID = 0x02;
         int maxSize = 0x40;
 
-        for ( int sentData = 0x00; sentData < fileContent.size(); sentData += dataSizeToSend ) {
+        for ( int sentData = 0x00; sentData < fileContent.length; sentData += dataSizeToSend ) {
             frame = new ArrayList<>();
             data = new ArrayList<>();
 
-            dataSizeToSend = Math.min(maxSize, this.fileContent.size() - sentData);
+            dataSizeToSend = Math.min(maxSize, this.fileContent.length - sentData);
             sentDataArray = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(sentData).array();
             for ( byte value : sentDataArray ) {
                 data.add(value);
             }
-            data.addAll(this.fileContent.subList(sentData, dataSizeToSend + sentData));
+            for ( int i = sentData; i < sentData + dataSizeToSend; i++ ) {
+                data.add(this.fileContent[i]);
+            }
             frame.add(instructionID);
             frame.add((byte) data.size());
             frame.add((byte) 0x00);
@@ -188,18 +175,18 @@ public class Mbot2Communicator {
     }
 
     private List<Byte> xor32BitChecksum() {
-        int fileSize = fileContent.size();
+        int fileSize = fileContent.length;
         byte[] checksum = new byte[] {0x00, 0x00, 0x00, 0x00};
         byte padding = (byte) (fileSize % 4);
         for ( int i = 0; i < fileSize / 4; i++ ) {
-            checksum[0] ^= fileContent.get(i * 4);
-            checksum[1] ^= fileContent.get(i * 4 + 1);
-            checksum[2] ^= fileContent.get(i * 4 + 2);
-            checksum[3] ^= fileContent.get(i * 4 + 3);
+            checksum[0] ^= fileContent[i * 4];
+            checksum[1] ^= fileContent[i * 4 + 1];
+            checksum[2] ^= fileContent[i * 4 + 2];
+            checksum[3] ^= fileContent[i * 4 + 3];
         }
         if ( padding != 0 ) {
             for ( int i = 0; i < padding; i++ ) {
-                checksum[i] ^= fileContent.get(4 * (fileSize / 4) + i);
+                checksum[i] ^= fileContent[4 * (fileSize / 4) + i];
             }
         }
         return Arrays.asList(ArrayUtils.toObject(checksum));
@@ -215,18 +202,18 @@ public class Mbot2Communicator {
 
     private Pair<Integer, String> sendPayload() throws InterruptedException {
         Pair<Integer, String> result = new Pair<>(0, "Program successfully uploaded");
-        int payloadLength;
-        int writtenBytes;
         int retries = 1;
         int maxRetries = 3;
-        if ( !serialPort.isOpen() ) {
-            serialPort.openPort();
+        AnswerReceiver receiver = new AnswerReceiver();
+        transport.setReceiver(receiver);
+        if ( !transport.open() ) {
+            clearAndCloseAll();
+            return new Pair<>(1, "errorRobotUpload");
         }
         for ( int i = 0; i < payloads.size(); i++ ) {
             byte[] payload = payloads.get(i);
-            payloadLength = payload.length;
-            writtenBytes = serialPort.writeBytes(payload, payloadLength);
-            if ( writtenBytes != payloadLength || !receiveAnswer() ) {
+            CompletableFuture<Boolean> answer = receiver.expectAnswer();
+            if ( !transport.write(payload, payload.length) || !receiveAnswer(answer) ) {
                 if ( retries++ >= maxRetries ) {
                     result = new Pair<>(1, "errorRobotUpload");
                     break;
@@ -243,26 +230,18 @@ public class Mbot2Communicator {
         return result;
     }
 
-    private boolean receiveAnswer() throws InterruptedException {
-        short bufSize = 128;
-        byte[] buf = new byte[bufSize];
-        String bufAsHexString;
-        Matcher responseMatcher;
-        long time = System.currentTimeMillis();
-        while ( (System.currentTimeMillis()) - time < 3000 ) {
-            serialPort.readBytes(buf, bufSize);
-            bufAsHexString = Hex.encodeHexString(buf);
-            responseMatcher = responsePattern.matcher(bufAsHexString);
-            if ( responseMatcher.find() ) {
-                if ( responseMatcher.group(4) != null ) { //4 == regex error group
-                    LOG.error("A package could not be delivered");
-                    return false;
-                }
-                return true;
+    private boolean receiveAnswer(CompletableFuture<Boolean> answer) throws InterruptedException {
+        try {
+            if ( !answer.get(ANSWER_TIMEOUT, TimeUnit.MILLISECONDS) ) {
+                LOG.error("A package could not be delivered");
+                return false;
             }
-            Thread.sleep(1);
+            return true;
+        } catch ( TimeoutException e ) {
+            LOG.error("Timeout: No response received");
+        } catch ( ExecutionException e ) {
+            LOG.error("Robot seems disconnected");
         }
-        LOG.error("Timeout: No response received");
         return false;
     }
 
@@ -275,8 +254,58 @@ public class Mbot2Communicator {
     }
 
     private void clearAndCloseAll() {
-        serialPort.closePort();
+        transport.close();
         payloads.clear();
-        fileContent.clear();
+        fileContent = new byte[0];
+    }
+
+    /**
+     * Looks for the answer of the robot in the received bytes. The answers are short, only the last bytes are kept.
+     */
+    static final class AnswerReceiver implements SerialTransport.Receiver {
+        private final byte[] received = new byte[64];
+        private int length = 0;
+        private CompletableFuture<Boolean> answer = new CompletableFuture<>();
+
+        synchronized CompletableFuture<Boolean> expectAnswer() {
+            this.answer = new CompletableFuture<>();
+            this.length = 0;
+            return this.answer;
+        }
+
+        @Override
+        public synchronized void receive(byte[] data, int count) {
+            for ( int i = 0; i < count; i++ ) {
+                if ( this.length == this.received.length ) {
+                    System.arraycopy(this.received, 1, this.received, 0, this.length - 1);
+                    this.length--;
+                }
+                this.received[this.length++] = data[i];
+                if ( data[i] == (byte) 0xF4 ) {
+                    if ( endsWith(ANSWER_FRAME_FAILED) ) {
+                        this.answer.complete(false);
+                    } else if ( endsWith(ANSWER_FRAME_WRITTEN) || endsWith(ANSWER_MODE_UPLOAD) ) {
+                        this.answer.complete(true);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public synchronized void disconnected() {
+            this.answer.completeExceptionally(new IllegalStateException("Robot seems disconnected"));
+        }
+
+        private boolean endsWith(byte[] expected) {
+            if ( this.length < expected.length ) {
+                return false;
+            }
+            for ( int i = 0; i < expected.length; i++ ) {
+                if ( this.received[this.length - expected.length + i] != expected[i] ) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,7 @@
 package de.fhg.iais.roberta.connection.wired.mBot2;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,60 +53,7 @@ public class Mbot2Connector extends AbstractConnector<Mbot2> {
                 }
                 break;
             case WAIT_FOR_CMD:
-                fillBrickData(CMD_PUSH);
-                try {
-                    JSONObject response = this.serverCommunicator.pushRequest(this.brickData);
-                    String cmdKey = response.getString(KEY_CMD);
-                    switch ( cmdKey ) {
-                        case CMD_REPEAT:
-                            break;
-                        case CMD_DOWNLOAD:
-                            LOG.info("Download user program");
-                            try {
-                                Pair<byte[], String> program = this.serverCommunicator.downloadProgram(this.brickData);
-                                if ( program.getFirst().length > 65534 ) {
-                                    this.fire(State.ERROR_UPLOAD_TO_ROBOT.setAdditionalInfo("errorRobotProgramTooLarge"));
-                                    this.fire(State.WAIT_FOR_CMD);
-                                    break;
-                                }
-                                File tmp = File.createTempFile("mbot2_", program.getSecond());
-                                tmp.deleteOnExit();
-
-                                if ( !tmp.exists() ) {
-                                    throw new FileNotFoundException("FIle " + tmp.getAbsolutePath() + " does not exist");
-                                }
-
-                                try (FileOutputStream os = new FileOutputStream(tmp)) {
-                                    os.write(program.getFirst());
-                                }
-
-                                this.fire(State.WAIT_UPLOAD);
-                                Pair<Integer, String> result = this.mbot2comm.uploadFile(this.robot.getPort(), tmp.getAbsolutePath());
-                                if ( result.getFirst() != 0 ) {
-                                    this.fire(State.ERROR_UPLOAD_TO_ROBOT.setAdditionalInfo(result.getSecond()));
-                                    this.fire(State.WAIT_FOR_CMD);
-                                }
-                            } catch ( FileNotFoundException e ) {
-                                LOG.info("File not found: {}", e.getMessage());
-                                this.fire(State.ERROR_UPLOAD_TO_ROBOT);
-                                this.fire(State.WAIT_FOR_CMD);
-                            }
-                            break;
-                        case CMD_CONFIGURATION:
-                            LOG.info("Configuration");
-                            break;
-                        case CMD_UPDATE:
-                            LOG.info("Firmware update not necessary and not supported!");
-                            break;
-                        case CMD_ABORT:
-                            LOG.error("Unexpected response from server: {}", cmdKey);
-                            this.reset(State.ERROR_HTTP);
-                            break;
-                    }
-                } catch ( JSONException | IOException e ) {
-                    LOG.error("WAIT_FOR_CMD {}", e.getMessage());
-                    this.reset(State.ERROR_HTTP);
-                }
+                this.push();
                 break;
             case WAIT_UPLOAD:
                 this.fire(State.WAIT_FOR_CMD);
@@ -126,4 +69,51 @@ public class Mbot2Connector extends AbstractConnector<Mbot2> {
         this.brickData.put(KEY_TOKEN, this.token);
         this.brickData.put(KEY_CMD, cmd);
     }
+
+    @Override
+    protected byte[] createPushRequest() {
+        return this.getRequestEncoder(this.mbot2comm::getDeviceInfo).encode(CMD_PUSH);
+    }
+
+    @Override
+    protected void handlePushResponse(JSONObject response) {
+        String cmdKey = response.getString(KEY_CMD);
+        switch ( cmdKey ) {
+            case CMD_REPEAT:
+                break;
+            case CMD_DOWNLOAD:
+                LOG.info("Download user program");
+                try {
+                    JSONObject downloadRequest = this.getRequestEncoder(this.mbot2comm::getDeviceInfo).toJson(CMD_PUSH);
+                    // the header frame carries a checksum over the whole file, so the program cannot be passed on before it is complete
+                    byte[] program = this.serverCommunicator.downloadProgram(downloadRequest).getFirst();
+                    if ( program.length > 65534 ) {
+                        this.fire(State.ERROR_UPLOAD_TO_ROBOT, "errorRobotProgramTooLarge");
+                        this.fire(State.WAIT_FOR_CMD);
+                        break;
+                    }
+
+                    this.fire(State.WAIT_UPLOAD);
+                    Pair<Integer, String> result = this.mbot2comm.uploadFile(this.robot.getPort(), program);
+                    if ( result.getFirst() != 0 ) {
+                        this.fire(State.ERROR_UPLOAD_TO_ROBOT, result.getSecond());
+                        this.fire(State.WAIT_FOR_CMD);
+                    }
+                } catch ( IOException e ) {
+                    LOG.error("WAIT_FOR_CMD {}", e.getMessage());
+                    this.reset(State.ERROR_HTTP);
+                }
+                break;
+            case CMD_CONFIGURATION:
+                LOG.info("Configuration");
+                break;
+            case CMD_UPDATE:
+                LOG.info("Firmware update not necessary and not supported!");
+                break;
+            case CMD_ABORT:
+                LOG.error("Unexpected response from server: {}", cmdKey);
+                this.reset(State.ERROR_HTTP);
+                break;
+        }
+    }
 }
@@ -1,47 +1,55 @@
 package de.fhg.iais.roberta.connection.wired.spike;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Base64;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import org.apache.commons.io.FileUtils;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.RandomStringUtils;
-import org.apache.commons.lang3.SystemUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fazecast.jSerialComm.SerialPort;
-
-import de.fhg.iais.roberta.connection.wired.ClearBufferThread;
 import de.fhg.iais.roberta.connection.wired.IWiredRobot;
+import de.fhg.iais.roberta.connection.wired.SerialTransport;
 import de.fhg.iais.roberta.util.Pair;
+import de.fhg.iais.roberta.util.PropertyHelper;
 
 public class SpikeCommunicator {
 
     private static final Logger LOG = LoggerFactory.getLogger(SpikeCommunicator.class);
 
     private final IWiredRobot robot;
-    private final ClearBufferThread clearBufferThread;
-    private final int slotId = 0;
+    private final SerialTransport transport;
+    private static final int MAX_DATA_SIZE = 512;
+    private static final long RESPONSE_TIMEOUT = 12000L;
+    private static final long PACKAGE_RESPONSE_TIMEOUT = 2000L; // the hub answers a package at once, a lost one should not hold up the upload
 
-    private SerialPort serialPort;
-    private List<JSONObject> payloads;
-    private byte[] fileContentEncoded;
+    private final int slotId = 0;
 
-    private boolean transferIdAdded = false;
+    private String transferId = null;
     private boolean resendStarWriteProgramPayload = true;
+    private int uploadWindow = Integer.parseInt(PropertyHelper.getInstance().getProperty("spikeUploadWindow"));
+    private final SpikeFrameDecoder frameDecoder = new SpikeFrameDecoder();
 
     SpikeCommunicator(IWiredRobot robot) {
+        this(robot, new SerialTransport(robot.getPort(), 115200));
+    }
+
+    SpikeCommunicator(IWiredRobot robot, SerialTransport transport) {
         this.robot = robot;
-        this.clearBufferThread = new ClearBufferThread(robot.getPort());
+        this.transport = transport;
     }
 
     public JSONObject getDeviceInfo() {
@@ -53,58 +61,80 @@ public class SpikeCommunicator {
         return deviceInfo;
     }
 
-    public Pair<Integer, String> handleUpload(String absolutePath) {
+    /**
+     * Uploads the program to the robot while it is read from the stream. Each package is sent as soon as it is read, the program is only buffered if its
+     * size is unknown, because the robot needs the size before the first package. Several packages are sent before their answers arrive, if the robot
+     * rejects one of them the upload fails with code 2 and the following uploads wait for each answer.
+     *
+     * @param program the content of the program
+     * @param programSize the size of the program in bytes, negative if unknown
+     * @return the result of the upload, code 2 if it should be repeated with a new stream
+     */
+    public Pair<Integer, String> handleUpload(InputStream program, long programSize) {
         Pair<Integer, String> result = new Pair<>(1, "errorRobotUpload");
         try {
-            stopClearBufferThread();
-            initSerialPort(this.robot.getPort());
+            initSerialPort();
 
-            extractFileInformation(absolutePath);
-            createJsonPayloads();
+            if ( programSize < 0 ) {
+                byte[] programContent = IOUtils.toByteArray(program);
+                program = new ByteArrayInputStream(programContent);
+                programSize = programContent.length;
+            }
 
-            result = sendPayloads();
+            result = sendPayloads(program, programSize);
             LOG.info(result.getSecond());
         } catch ( Exception e ) {
             LOG.info(e.getMessage());
         }
 
-        transferIdAdded = false;
+        transferId = null;
         resendStarWriteProgramPayload = true;
-        startClearBufferThread();
+        transport.setReceiver(null); // discard everything the program prints until the next upload
         return result;
     }
 
-    private void initSerialPort(String portName) {
-        portName = (SystemUtils.IS_OS_WINDOWS ? "" : "/dev/") + portName; // to hide the parameter, which should not be used
-        serialPort = SerialPort.getCommPort(portName);
-        serialPort.setBaudRate(115200);
-        LOG.info("Serial Communication is initialized: {} {} {}",
-            serialPort.getSystemPortName(),
-            serialPort.getDescriptivePortName(),
-            serialPort.getPortDescription());
-    }
+    /**
+     * Restarts the program that is already stored in the slot of the robot, without writing it again.
+     *
+     * @return the result of the restart
+     */
+    public Pair<Integer, String> handleExecute() {
+        Pair<Integer, String> result = new Pair<>(1, "errorRobotUpload");
+        try {
+            initSerialPort();
 
-    private void extractFileInformation(String filePath) throws IOException {
-        File file = new File(filePath);
-        fileContentEncoded = FileUtils.readFileToByteArray(file);
-    }
+            result = sendPayload(createProgramTerminatePayload(), 1, 2);
+            if ( result.getFirst() == 0 ) {
+                result = sendPayload(createExecuteProgramPayload(), 2, 2);
+            }
+        } catch ( Exception e ) {
+            LOG.info(e.getMessage());
+        }
 
-    private void createJsonPayloads() {
-        payloads = new ArrayList<>();
+        transport.setReceiver(null);
+        return result;
+    }
 
-        createProgramTerminatePayload();
-        createStartWriteProgramPayload();
-        createWritePackagePayload();
-        createExecuteProgramPayload();
+    /**
+     * Closes the serial port, it is opened again by the next upload.
+     */
+    public void close() {
+        transport.close();
+    }
 
-        LOG.info("Created " + payloads.size() + " payloads");
+    private void initSerialPort() throws IOException {
+        frameDecoder.reset();
+        if ( !transport.open() ) {
+            throw new IOException("Could not open the serial port of the robot");
+        }
+        transport.setReceiver(frameDecoder);
     }
 
-    private void createProgramTerminatePayload() {
-        assemblePayload("program_terminate", new JSONObject());
+    private JSONObject createProgramTerminatePayload() {
+        return assemblePayload("program_terminate", new JSONObject());
     }
 
-    private void createStartWriteProgramPayload() {
+    private JSONObject createStartWriteProgramPayload(long programSize) {
         JSONObject params = new JSONObject();
         JSONObject meta = new JSONObject();
         long nowTime = System.currentTimeMillis() / 1000;
@@ -116,123 +146,196 @@ public class SpikeCommunicator {
         meta.put("project_id", "OpenRoberta");
 
         params.put("slotid", slotId);
-        params.put("size", fileContentEncoded.length);
+        params.put("size", programSize);
         params.put("meta", meta);
 
-        assemblePayload("start_write_program", params);
+        return assemblePayload("start_write_program", params);
     }
 
-    private void createWritePackagePayload() {
-        List<JSONObject> paramList = new ArrayList<>();
-        int maxDataSize = 512;
-        int rest = 0;
-        int end;
-        for ( int i = 0; i < fileContentEncoded.length; i += end ) {
-            JSONObject param = new JSONObject();
-            end = Math.min(maxDataSize, fileContentEncoded.length - rest);
-            rest += end;
-            param.put("data", Base64.getEncoder().encodeToString(Arrays.copyOfRange(fileContentEncoded, i, i + end)));
-
-            paramList.add(param);
-        }
-        for ( JSONObject params : paramList ) {
-            assemblePayload("write_package", params);
-        }
-    }
-
-    private void createExecuteProgramPayload() {
+    private JSONObject createExecuteProgramPayload() {
         JSONObject params = new JSONObject();
         params.put("slotid", slotId);
-        assemblePayload("program_execute", params);
+        return assemblePayload("program_execute", params);
     }
 
-    private void assemblePayload(String mode, JSONObject params) {
+    private static JSONObject assemblePayload(String mode, JSONObject params) {
         JSONObject payload = new JSONObject();
 
         payload.put("m", mode);
         payload.put("p", params);
         payload.put("i", RandomStringUtils.randomAlphanumeric(4));
 
-        payloads.add(payload);
+        return payload;
     }
 
-    private void addTransferIdToWritePackage(String transferId) {
-        for ( JSONObject payload : payloads ) {
-            if ( payload.getString("m").equals("write_package") ) {
-                payload.getJSONObject("p").put("transferid", transferId);
-            }
+    private Pair<Integer, String> sendPayloads(InputStream program, long programSize) throws IOException, InterruptedException, JSONException {
+        long payloadCount = 3 + ((programSize + MAX_DATA_SIZE - 1) / MAX_DATA_SIZE);
+        LOG.info("Program upload starts");
+        Pair<Integer, String> result = sendPayload(createProgramTerminatePayload(), 1, payloadCount);
+        if ( result.getFirst() != 0 ) {
+            return result;
+        }
+        result = sendPayload(createStartWriteProgramPayload(programSize), 2, payloadCount);
+        if ( result.getFirst() != 0 ) {
+            return result;
         }
-        transferIdAdded = true;
+        result = (this.uploadWindow > 1) ? sendPackagesWindowed(program, payloadCount) : sendPackages(program, payloadCount);
+        if ( result.getFirst() != 0 ) {
+            return result;
+        }
+        return sendPayload(createExecuteProgramPayload(), payloadCount, payloadCount);
     }
 
-    private Pair<Integer, String> sendPayloads() throws InterruptedException, JSONException {
-        Pair<Integer, String> result = new Pair<>(1, "errorRobotUpload");
-        int payloadSize = payloads.size();
-        if ( !serialPort.isOpen() ) {
-            serialPort.openPort();
+    private Pair<Integer, String> sendPackages(InputStream program, long payloadCount) throws IOException, InterruptedException, JSONException {
+        SpikePayloadIterator payloads = new SpikePayloadIterator(program, MAX_DATA_SIZE, transferId);
+        String id;
+        long payloadNumber = 3;
+        while ( (id = payloads.next()) != null ) {
+            LOG.info("sending payload " + payloadNumber++ + " of " + payloadCount);
+            CompletableFuture<JSONObject> answer = sendRequest(id, payloads.getPayload(), payloads.getPayloadLength());
+            if ( answer == null ) {
+                return new Pair<>(1, "errorRobotUpload");
+            }
+            Pair<Integer, String> result = receiveResponse(answer, "write_package");
+            if ( result.getFirst() != 0 ) {
+                return result;
+            }
         }
-        LOG.info("Program upload starts");
-        for ( int i = 0; i < payloadSize; i++ ) {
-            LOG.info("sending payload " + (i + 1) + " of " + payloadSize);
-            JSONObject payload = payloads.get(i);
-            String payloadAsString = payload + "\r";
-            byte[] payloadAsBytes = payloadAsString.getBytes(StandardCharsets.UTF_8);
-            int payloadLength = payloadAsBytes.length;
-            int bytesWritten = serialPort.writeBytes(payloadAsBytes, payloadLength);
-
-            if ( bytesWritten == payloadLength ) {
-                Thread.sleep(1);
-                result = receiveResponse(payload);
-                if ( result.getFirst() == 1 ) {
+        return new Pair<>(0, "");
+    }
+
+    /**
+     * Keeps up to the upload window of packages on the way to the robot, the answers are matched by the id of the package. Falls back to waiting for
+     * each answer if the robot reports an error or does not answer a package in time.
+     */
+    private Pair<Integer, String> sendPackagesWindowed(InputStream program, long payloadCount) throws IOException, InterruptedException, JSONException {
+        Map<Long, CompletableFuture<JSONObject>> inFlight = new LinkedHashMap<>(); // by payload number, the oldest first
+        SpikePayloadIterator payloads = new SpikePayloadIterator(program, MAX_DATA_SIZE, transferId);
+        long payloadNumber = 3;
+        boolean endOfProgram = false;
+
+        while ( !endOfProgram || !inFlight.isEmpty() ) {
+            while ( !endOfProgram && (inFlight.size() < this.uploadWindow) ) {
+                String id = payloads.next();
+                if ( id == null ) {
+                    endOfProgram = true;
                     break;
-                } else if ( result.getFirst() == 2 ) {
-                    resendStarWriteProgramPayload = false;
-                    i--;
                 }
-            } else {
-                break;
+                LOG.info("sending payload " + payloadNumber + " of " + payloadCount);
+                CompletableFuture<JSONObject> answer = sendRequest(id, payloads.getPayload(), payloads.getPayloadLength());
+                if ( answer == null ) {
+                    return new Pair<>(1, "errorRobotUpload");
+                }
+                inFlight.put(payloadNumber++, answer);
+            }
+
+            if ( inFlight.isEmpty() ) {
+                continue;
+            }
+
+            // wait for the oldest package, the answers to the later ones are handled along with it
+            try {
+                inFlight.values().iterator().next().get(PACKAGE_RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch ( TimeoutException e ) {
+                LOG.error("Error: No response received from the robot");
+                return fallBackToStopAndWait();
+            } catch ( ExecutionException e ) {
+                if ( !(e.getCause() instanceof JSONException) ) {
+                    LOG.error("Error: Robot seems disconnected");
+                    return new Pair<>(1, "errorRobotUpload");
+                }
+            }
+
+            Iterator<CompletableFuture<JSONObject>> answers = inFlight.values().iterator();
+            while ( answers.hasNext() ) {
+                CompletableFuture<JSONObject> answer = answers.next();
+                if ( !answer.isDone() ) {
+                    continue;
+                }
+                answers.remove();
+                JSONObject jsonAnswer = getAnswer(answer);
+                if ( (jsonAnswer != null) && jsonAnswer.has("e") ) {
+                    String error = new String(Base64.getDecoder().decode(jsonAnswer.getString("e")), StandardCharsets.UTF_8);
+                    LOG.error("Error from the robot: {}", error);
+                    return fallBackToStopAndWait();
+                }
             }
         }
-        return result;
+        return new Pair<>(0, "");
     }
 
-    private Pair<Integer, String> receiveResponse(JSONObject payload) throws InterruptedException, JSONException {
-        String id = payload.getString("i");
-        Pattern findResponsePattern = Pattern.compile("(\\{.*(" + id + "|\"i\"|\"r\"|transferid|checksum|next_ptr){1}.*}?)");
-        short bufSize = 2048;
-        byte[] buffer = new byte[bufSize];
-        long time = System.currentTimeMillis();
+    private Pair<Integer, String> fallBackToStopAndWait() {
+        LOG.info("Sending the packages one by one from now on");
+        this.uploadWindow = 1;
+        return new Pair<>(2, "errorRobotUpload");
+    }
 
-        while ( (System.currentTimeMillis()) - time < 12000 ) {
-            int bytesAvailable = serialPort.bytesAvailable();
-            if ( bytesAvailable < 0 ) {
-                LOG.error("Error: Robot seems disconnected");
+    /**
+     * Writes the payload to the robot.
+     *
+     * @return the future answer of the robot, null if the payload could not be written
+     */
+    private CompletableFuture<JSONObject> sendRequest(JSONObject payload) {
+        byte[] payloadAsBytes = (payload + "\r").getBytes(StandardCharsets.UTF_8);
+        return sendRequest(payload.getString("i"), payloadAsBytes, payloadAsBytes.length);
+    }
+
+    /**
+     * Writes an encoded payload, ended by '\r', to the robot. The buffer can be reused as soon as this returns.
+     *
+     * @return the future answer of the robot, null if the payload could not be written
+     */
+    private CompletableFuture<JSONObject> sendRequest(String id, byte[] payload, int length) {
+        CompletableFuture<JSONObject> answer = this.frameDecoder.expect(id);
+        return transport.write(payload, length) ? answer : null;
+    }
+
+    /**
+     * Returns the answer of a completed request.
+     *
+     * @return the answer, null if it was broken
+     */
+    private static JSONObject getAnswer(CompletableFuture<JSONObject> answer) {
+        try {
+            return answer.join();
+        } catch ( CompletionException e ) {
+            LOG.info("Broken response detected. Ignoring and continuing the upload. {}", e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    private Pair<Integer, String> sendPayload(JSONObject payload, long payloadNumber, long payloadCount) throws InterruptedException, JSONException {
+        while ( true ) {
+            LOG.info("sending payload " + payloadNumber + " of " + payloadCount);
+            CompletableFuture<JSONObject> answer = sendRequest(payload);
+            if ( answer == null ) {
                 return new Pair<>(1, "errorRobotUpload");
             }
-            serialPort.readBytes(buffer, Math.min(bytesAvailable, bufSize));
-            String answer = new String(buffer, StandardCharsets.UTF_8);
-            Matcher responseMatcher = findResponsePattern.matcher(answer);
-            if ( responseMatcher.find() ) {
-                return checkResponse(responseMatcher.group(), id, payload.getString("m"));
+            Pair<Integer, String> result = receiveResponse(answer, payload.getString("m"));
+            if ( result.getFirst() != 2 ) {
+                return result;
             }
-            Thread.sleep(10);
+            resendStarWriteProgramPayload = false;
         }
-        LOG.error("Error: No response received from the robot");
-        return new Pair<>(1, "errorRobotUpload");
     }
 
-    private Pair<Integer, String> checkResponse(String response, String id, String mode) throws JSONException {
+    private Pair<Integer, String> receiveResponse(CompletableFuture<JSONObject> answer, String mode) throws InterruptedException, JSONException {
         try {
-            JSONObject jsonAnswer = new JSONObject(response);
-            if ( jsonAnswer.has("e") ) {
-                String error = new String(Base64.getDecoder().decode(jsonAnswer.getString("e")), StandardCharsets.UTF_8);
-                LOG.error("Error from the robot: {}", error);
+            answer.get(RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch ( TimeoutException e ) {
+            LOG.error("Error: No response received from the robot");
+            return new Pair<>(1, "errorRobotUpload");
+        } catch ( ExecutionException e ) {
+            if ( !(e.getCause() instanceof JSONException) ) {
+                LOG.error("Error: Robot seems disconnected");
                 return new Pair<>(1, "errorRobotUpload");
             }
-            if ( !transferIdAdded && !jsonAnswer.get("r").equals(JSONObject.NULL) && jsonAnswer.getJSONObject("r").has("transferid") ) {
-                addTransferIdToWritePackage(jsonAnswer.getJSONObject("r").getString("transferid"));
-            }
-        } catch ( JSONException e ) {
+        }
+        return checkResponse(getAnswer(answer), mode);
+    }
+
+    private Pair<Integer, String> checkResponse(JSONObject jsonAnswer, String mode) throws JSONException {
+        if ( jsonAnswer == null ) {
             if ( mode.equals("start_write_program") ) {
                 if ( !resendStarWriteProgramPayload ) {
                     return new Pair<>(1, "errorRobotUpload");
@@ -240,16 +343,17 @@ public class SpikeCommunicator {
                 LOG.info("Response with transferId is broken. Sending payload again");
                 return new Pair<>(2, "");
             }
-            LOG.info("Broken response detected. Ignoring and continuing the upload. Response: " + response);
+            return new Pair<>(0, "");
+        }
+        if ( jsonAnswer.has("e") ) {
+            String error = new String(Base64.getDecoder().decode(jsonAnswer.getString("e")), StandardCharsets.UTF_8);
+            LOG.error("Error from the robot: {}", error);
+            return new Pair<>(1, "errorRobotUpload");
+        }
+        Object response = jsonAnswer.opt("r");
+        if ( (transferId == null) && (response instanceof JSONObject) && ((JSONObject) response).has("transferid") ) {
+            transferId = ((JSONObject) response).getString("transferid");
         }
         return new Pair<>(0, "");
     }
-
-    private void startClearBufferThread() {
-        clearBufferThread.start(serialPort);
-    }
-
-    private void stopClearBufferThread() {
-        clearBufferThread.exit();
-    }
-}
\ No newline at end of file
+}
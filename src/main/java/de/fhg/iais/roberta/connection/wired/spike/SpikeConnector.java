@@ -1,9 +1,9 @@
 package de.fhg.iais.roberta.connection.wired.spike;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.function.Function;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -14,21 +14,29 @@ import de.fhg.iais.roberta.connection.AbstractConnector;
 import de.fhg.iais.roberta.connection.wired.arduino.ArduinoConnector;
 import de.fhg.iais.roberta.util.OraTokenGenerator;
 import de.fhg.iais.roberta.util.Pair;
+import de.fhg.iais.roberta.util.ProgramCache;
 
 public class SpikeConnector extends AbstractConnector<Spike> {
     private static final Logger LOG = LoggerFactory.getLogger(ArduinoConnector.class);
 
-    private SpikeCommunicator spikeCommunicator = null;
+    private final Function<Spike, SpikeCommunicator> communicatorFactory;
+    private volatile SpikeCommunicator spikeCommunicator = null;
+    private ProgramCache.Program flashedProgram = null;
 
     protected SpikeConnector(Spike robot) {
+        this(robot, SpikeCommunicator::new);
+    }
+
+    SpikeConnector(Spike robot, Function<Spike, SpikeCommunicator> communicatorFactory) {
         super(robot);
+        this.communicatorFactory = communicatorFactory;
     }
 
     @Override
     protected void runLoopBody() {
         switch ( this.state ) {
             case DISCOVER:
-                this.spikeCommunicator = new SpikeCommunicator(this.robot);
+                this.spikeCommunicator = this.communicatorFactory.apply(this.robot);
                 this.fire(State.WAIT_FOR_CONNECT_BUTTON_PRESS);
                 break;
             case CONNECT_BUTTON_IS_PRESSED:
@@ -62,67 +70,107 @@ public class SpikeConnector extends AbstractConnector<Spike> {
                 }
                 break;
             case WAIT_FOR_CMD:
-                this.brickData = this.spikeCommunicator.getDeviceInfo();
-                this.brickData.put(KEY_TOKEN, this.token);
-                this.brickData.put(KEY_CMD, CMD_PUSH);
-                try {
-                    JSONObject serverResponse = this.serverCommunicator.pushRequest(this.brickData);
-                    String cmdKey = serverResponse.getString(KEY_CMD);
-                    switch ( cmdKey ) {
-                        case CMD_REPEAT:
-                            break;
-                        case CMD_DOWNLOAD:
-                            LOG.info("Download user program");
-                            try {
-                                Pair<byte[], String> program = this.serverCommunicator.downloadProgram(this.brickData);
-                                File tmp = File.createTempFile(program.getSecond(), "");
-                                tmp.deleteOnExit();
+                this.push();
+                break;
+            case WAIT_UPLOAD:
+                this.fire(State.WAIT_FOR_CMD);
+                break;
+            default:
+                break;
+        }
+    }
 
-                                if ( !tmp.exists() ) {
-                                    throw new FileNotFoundException("File " + tmp.getAbsolutePath() + " does not exist.");
-                                }
+    /**
+     * Pins the program that is on the robot in the cache, so that it can be restarted or uploaded again later. The previous one is released.
+     */
+    private synchronized void setFlashedProgram(ProgramCache.Program program) {
+        ProgramCache.getInstance().pin(program);
+        ProgramCache.getInstance().unpin(this.flashedProgram);
+        this.flashedProgram = program;
+    }
 
-                                try (FileOutputStream os = new FileOutputStream(tmp)) {
-                                    os.write(program.getFirst());
-                                }
-                                this.fire(State.WAIT_UPLOAD);
-                                Pair<Integer, String> result = this.spikeCommunicator.handleUpload(tmp.getAbsolutePath());
-                                if ( result.getFirst() != 0 ) {
-                                    this.fire(State.ERROR_UPLOAD_TO_ROBOT.setAdditionalInfo(result.getSecond()));
-                                    this.fire(State.WAIT_FOR_CMD);
-                                }
-                            } catch ( FileNotFoundException e ) {
-                                LOG.info("File not found: {}", e.getMessage());
-                                this.fire(State.ERROR_UPLOAD_TO_ROBOT);
-                                this.fire(State.WAIT_FOR_CMD);
-                            } catch ( IOException io ) {
-                                LOG.info("Download and run failed: {}", io.getMessage());
-                                LOG.info("Do not give up yet - make the next push request");
-                                this.fire(State.ERROR_UPLOAD_TO_ROBOT);
-                                this.fire(State.WAIT_FOR_CMD);
+    private Pair<Integer, String> upload(ProgramCache.Program program) throws IOException {
+        try (InputStream content = Files.newInputStream(program.getPath())) {
+            return this.spikeCommunicator.handleUpload(content, Files.size(program.getPath()));
+        }
+    }
+
+    @Override
+    protected byte[] createPushRequest() {
+        return this.getRequestEncoder(this.spikeCommunicator::getDeviceInfo).encode(CMD_PUSH);
+    }
+
+    @Override
+    protected void handlePushResponse(JSONObject response) {
+        String cmdKey = response.getString(KEY_CMD);
+        switch ( cmdKey ) {
+            case CMD_REPEAT:
+                break;
+            case CMD_DOWNLOAD:
+                LOG.info("Download user program");
+                try {
+                    JSONObject downloadRequest = this.getRequestEncoder(this.spikeCommunicator::getDeviceInfo).toJson(CMD_PUSH);
+                    // a changed program is uploaded while it is downloaded, it is cached on the way
+                    Pair<ProgramCache.Program, Pair<Integer, String>> download =
+                        this.serverCommunicator.downloadProgramToCache(downloadRequest, this.flashedProgram, (content, contentLength, fileName) -> {
+                            this.fire(State.WAIT_UPLOAD);
+                            this.setFlashedProgram(null);
+                            return this.spikeCommunicator.handleUpload(content, contentLength);
+                        });
+                    ProgramCache.Program program = download.getFirst();
+                    ProgramCache.getInstance().pin(program); // keeps the program readable while it is uploaded again
+                    try {
+                        Pair<Integer, String> result = download.getSecond();
+                        if ( result == null ) {
+                            this.fire(State.WAIT_UPLOAD);
+                            LOG.info("Program {} is already on the robot, restarting it", program);
+                            result = this.spikeCommunicator.handleExecute();
+                            if ( result.getFirst() != 0 ) {
+                                LOG.info("Restart failed, uploading the program again");
+                                this.setFlashedProgram(null);
+                                result = this.upload(program);
                             }
-                            break;
-                        case CMD_CONFIGURATION:
-                            LOG.info("Configuration");
-                            break;
-                        case CMD_UPDATE:
-                            LOG.info("Firmware update not necessary and not supported!");
-                            break;
-                        case CMD_ABORT:
-                            LOG.error("Unexpected response from server: {}", cmdKey);
-                            this.reset(State.ERROR_HTTP);
-                            break;
+                        }
+                        if ( result.getFirst() == 2 ) {
+                            LOG.info("Pipelined upload was rejected, uploading the program again");
+                            result = this.upload(program);
+                        }
+                        if ( result.getFirst() == 0 ) {
+                            this.setFlashedProgram(program);
+                        }
+                        if ( result.getFirst() != 0 ) {
+                            this.fire(State.ERROR_UPLOAD_TO_ROBOT, result.getSecond());
+                            this.fire(State.WAIT_FOR_CMD);
+                        }
+                    } finally {
+                        ProgramCache.getInstance().unpin(program);
                     }
-                } catch ( IOException | JSONException e ) {
-                    LOG.error("WAIT_FOR_CMD {}", e.getMessage());
-                    this.reset(State.ERROR_HTTP);
+                } catch ( IOException io ) {
+                    LOG.info("Download and run failed: {}", io.getMessage());
+                    LOG.info("Do not give up yet - make the next push request");
+                    this.fire(State.ERROR_UPLOAD_TO_ROBOT);
+                    this.fire(State.WAIT_FOR_CMD);
                 }
                 break;
-            case WAIT_UPLOAD:
-                this.fire(State.WAIT_FOR_CMD);
+            case CMD_CONFIGURATION:
+                LOG.info("Configuration");
                 break;
-            default:
+            case CMD_UPDATE:
+                LOG.info("Firmware update not necessary and not supported!");
                 break;
+            case CMD_ABORT:
+                LOG.error("Unexpected response from server: {}", cmdKey);
+                this.reset(State.ERROR_HTTP);
+                break;
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if ( this.spikeCommunicator != null ) {
+            this.spikeCommunicator.close();
         }
+        this.setFlashedProgram(null);
     }
 }
@@ -0,0 +1,177 @@
+package de.fhg.iais.roberta.connection.wired.spike;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+
+import de.fhg.iais.roberta.connection.wired.SerialTransport;
+
+/**
+ * Splits the bytes sent by the Spike hub into messages and hands the answers to the requests that wait for them. The hub ends every JSON message
+ * with '\r', the bytes are collected in a ring buffer until a message is complete. Messages without a waiting id, like the sensor values the hub
+ * sends all the time, are dropped.
+ */
+final class SpikeFrameDecoder implements SerialTransport.Receiver {
+    private static final Logger LOG = LoggerFactory.getLogger(SpikeFrameDecoder.class);
+
+    private static final byte DELIMITER = '\r';
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final int MAX_CAPACITY = 65536;
+
+    private final Map<String, CompletableFuture<JSONObject>> waiting = new LinkedHashMap<>(); // guarded by this
+
+    // guarded by this
+    private byte[] ring = new byte[INITIAL_CAPACITY];
+    private int head = 0; // index of the first byte of the current message
+    private int size = 0; // number of buffered bytes
+    private int scanned = 0; // number of buffered bytes that are known not to be a delimiter
+    private byte[] frame = new byte[INITIAL_CAPACITY];
+
+    /**
+     * Registers a request that waits for its answer. Has to be called before the request is written.
+     *
+     * @param id the id of the request
+     * @return a future that is completed with the answer, or completed exceptionally with a {@link JSONException} if the answer is broken
+     */
+    synchronized CompletableFuture<JSONObject> expect(String id) {
+        CompletableFuture<JSONObject> answer = new CompletableFuture<>();
+        this.waiting.put(id, answer);
+        return answer;
+    }
+
+    /**
+     * Stops waiting for answers and drops the buffered bytes.
+     */
+    synchronized void reset() {
+        this.waiting.clear();
+        this.head = 0;
+        this.size = 0;
+        this.scanned = 0;
+    }
+
+    @Override
+    public void receive(byte[] data, int length) {
+        this.accept(data, length);
+    }
+
+    /**
+     * Fails all waiting requests.
+     */
+    @Override
+    public synchronized void disconnected() {
+        for ( CompletableFuture<JSONObject> request : this.waiting.values() ) {
+            request.completeExceptionally(new IOException("Robot seems disconnected"));
+        }
+        this.waiting.clear();
+    }
+
+    /**
+     * Adds bytes read from the hub, every message completed by them is dispatched.
+     *
+     * @param data the buffer the bytes were read into
+     * @param length the number of bytes read
+     */
+    synchronized void accept(byte[] data, int length) {
+        for ( int offset = 0; offset < length; ) {
+            if ( this.size == this.ring.length ) {
+                this.grow();
+            }
+            int tail = (this.head + this.size) % this.ring.length;
+            int count = Math.min(length - offset, Math.min(this.ring.length - this.size, this.ring.length - tail));
+            System.arraycopy(data, offset, this.ring, tail, count);
+            this.size += count;
+            offset += count;
+            this.decode();
+        }
+    }
+
+    private void decode() {
+        while ( this.scanned < this.size ) {
+            if ( this.ring[(this.head + this.scanned) % this.ring.length] != DELIMITER ) {
+                this.scanned++;
+                continue;
+            }
+            int length = this.scanned;
+            if ( this.frame.length < length ) {
+                this.frame = new byte[this.ring.length];
+            }
+            int first = Math.min(length, this.ring.length - this.head);
+            System.arraycopy(this.ring, this.head, this.frame, 0, first);
+            System.arraycopy(this.ring, 0, this.frame, first, length - first);
+            this.head = (this.head + length + 1) % this.ring.length;
+            this.size -= length + 1;
+            this.scanned = 0;
+            this.dispatch(length);
+        }
+    }
+
+    private void grow() {
+        if ( this.ring.length >= MAX_CAPACITY ) {
+            LOG.warn("Dropping {} bytes from the robot without a message end", this.size);
+            this.head = 0;
+            this.size = 0;
+            this.scanned = 0;
+            return;
+        }
+        byte[] grown = new byte[this.ring.length * 2];
+        int first = Math.min(this.size, this.ring.length - this.head);
+        System.arraycopy(this.ring, this.head, grown, 0, first);
+        System.arraycopy(this.ring, 0, grown, first, this.size - first);
+        this.ring = grown;
+        this.head = 0;
+    }
+
+    private void dispatch(int length) {
+        int start = 0;
+        while ( (start < length) && (this.frame[start] != '{') ) {
+            start++; // skips line feeds and noise between the messages
+        }
+        if ( (start == length) || this.waiting.isEmpty() ) {
+            return;
+        }
+        String message = new String(this.frame, start, length - start, StandardCharsets.UTF_8);
+        try {
+            JSONObject answer = new JSONObject(message);
+            CompletableFuture<JSONObject> request = this.waiting.remove(answer.optString("i"));
+            if ( request != null ) {
+                request.complete(answer);
+            }
+        } catch ( JSONException e ) {
+            CompletableFuture<JSONObject> request = this.findRequestOfBrokenAnswer(message);
+            if ( request != null ) {
+                request.completeExceptionally(new JSONException("Broken response: " + message));
+            }
+        }
+    }
+
+    /**
+     * A broken answer belongs to the request whose id it contains. If the id is broken as well, it belongs to the oldest request, because the hub
+     * answers in order. Broken sensor values are ignored.
+     */
+    private CompletableFuture<JSONObject> findRequestOfBrokenAnswer(String message) {
+        Iterator<Entry<String, CompletableFuture<JSONObject>>> iterator = this.waiting.entrySet().iterator();
+        while ( iterator.hasNext() ) {
+            Entry<String, CompletableFuture<JSONObject>> entry = iterator.next();
+            if ( message.contains(entry.getKey()) ) {
+                iterator.remove();
+                return entry.getValue();
+            }
+        }
+        if ( message.contains("\"i\"") || message.contains("\"r\"") ) {
+            Iterator<CompletableFuture<JSONObject>> oldest = this.waiting.values().iterator();
+            CompletableFuture<JSONObject> request = oldest.next();
+            oldest.remove();
+            return request;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,88 @@
+package de.fhg.iais.roberta.connection.wired.spike;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.json.JSONObject;
+
+/**
+ * Encodes the write_package payloads of a program upload one after another while the program is read. Each payload is written into the same
+ * buffer right before it is sent, so the memory needed does not depend on the size of the program.
+ */
+final class SpikePayloadIterator {
+    private static final byte[] DATA_END = "\"},\"i\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PAYLOAD_END = "\"}\r".getBytes(StandardCharsets.US_ASCII);
+
+    private final InputStream program;
+    private final int maxDataSize;
+    private final byte[] prefix;
+    private final byte[] data;
+    private final byte[] encoded;
+    private final byte[] payload;
+    private int payloadLength = 0;
+
+    /**
+     * @param program the content of the program
+     * @param maxDataSize the number of program bytes per package
+     * @param transferId the id the robot assigned to the upload, null if it did not send one
+     */
+    SpikePayloadIterator(InputStream program, int maxDataSize, String transferId) {
+        this.program = program;
+        this.maxDataSize = maxDataSize;
+        String transferIdParam = (transferId == null) ? "" : ("\"transferid\":" + JSONObject.quote(transferId) + ",");
+        this.prefix = ("{\"m\":\"write_package\",\"p\":{" + transferIdParam + "\"data\":\"").getBytes(StandardCharsets.UTF_8);
+        this.data = new byte[maxDataSize];
+        this.encoded = new byte[4 * ((maxDataSize + 2) / 3)];
+        this.payload = new byte[this.prefix.length + this.encoded.length + DATA_END.length + 4 + PAYLOAD_END.length];
+    }
+
+    /**
+     * Reads the next package of the program and encodes its payload, ended by '\r'.
+     *
+     * @return the id of the payload, null if the whole program was read
+     * @throws IOException if the program could not be read
+     */
+    String next() throws IOException {
+        int length = IOUtils.read(this.program, this.data);
+        if ( length <= 0 ) {
+            return null;
+        }
+        int encodedLength = Base64.getEncoder().encode((length == this.maxDataSize) ? this.data : copyOf(this.data, length), this.encoded);
+        String id = RandomStringUtils.randomAlphanumeric(4);
+
+        int position = append(this.prefix, this.prefix.length, 0);
+        position = append(this.encoded, encodedLength, position);
+        position = append(DATA_END, DATA_END.length, position);
+        position = append(id.getBytes(StandardCharsets.US_ASCII), id.length(), position);
+        this.payloadLength = append(PAYLOAD_END, PAYLOAD_END.length, position);
+        return id;
+    }
+
+    /**
+     * Returns the buffer of the current payload, it is overwritten by the next call of {@link #next()}.
+     *
+     * @return the buffer that starts with the payload
+     */
+    byte[] getPayload() {
+        return this.payload;
+    }
+
+    int getPayloadLength() {
+        return this.payloadLength;
+    }
+
+    private int append(byte[] source, int length, int position) {
+        System.arraycopy(source, 0, this.payload, position, length);
+        return position + length;
+    }
+
+    private static byte[] copyOf(byte[] source, int length) {
+        byte[] copy = new byte[length]; // only the last package is shorter
+        System.arraycopy(source, 0, copy, 0, length);
+        return copy;
+    }
+}
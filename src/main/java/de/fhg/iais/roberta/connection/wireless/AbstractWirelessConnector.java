@@ -50,10 +50,11 @@ public abstract class AbstractWirelessConnector<T extends IRobot> extends Abstra
                 this.connectButtonIsPressed();
                 break;
             case WAIT_FOR_CMD:
-                this.waitForCmd();
+                this.push();
                 break;
             case WAIT_UPLOAD:
                 this.waitUpload();
+                this.invalidateRequestEncoder(); // the firmware version may have been checked
                 break;
             case WAIT_STOP_PROGRAM:
                 this.waitStopProgram();
@@ -105,40 +106,41 @@ public abstract class AbstractWirelessConnector<T extends IRobot> extends Abstra
         }
     }
 
-    protected final void waitForCmd() {
-        JSONObject deviceInfoWaitCMD = this.communicator.getDeviceInfo();
-        deviceInfoWaitCMD.put(KEY_TOKEN, this.token);
-        deviceInfoWaitCMD.put(KEY_CMD, CMD_PUSH);
+    @Override
+    protected byte[] createPushRequest() {
+        return this.getRequestEncoder(this.communicator::getDeviceInfo).encode(CMD_PUSH);
+    }
 
-        try {
-            JSONObject pushRequestResponse = this.serverCommunicator.pushRequest(deviceInfoWaitCMD);
-            String serverCommand = pushRequestResponse.getString(KEY_CMD);
-
-            if (serverCommand.equals(CMD_REPEAT)) {
-                // do nothing
-            } else if (serverCommand.equals(CMD_DOWNLOAD)) {
-                this.fire(State.WAIT_UPLOAD);
-            } else if (serverCommand.equals(CMD_STOP_PROGRAM)) {
-                this.fire(State.WAIT_STOP_PROGRAM);
-            } else {
-                LOG.info("WAIT_FOR_CMD {}", "Unexpected response from server");
-                this.resetLastConnectionData();
-                this.reset(State.ERROR_HTTP);
-            }
-        } catch (IOException e) {
-            LOG.info("WAIT_FOR_CMD {}", e.getMessage());
+    @Override
+    protected void handlePushResponse(JSONObject pushRequestResponse) {
+        String serverCommand = pushRequestResponse.getString(KEY_CMD);
+
+        if (serverCommand.equals(CMD_REPEAT)) {
+            // do nothing
+        } else if (serverCommand.equals(CMD_DOWNLOAD)) {
+            this.fire(State.WAIT_UPLOAD);
+        } else if (serverCommand.equals(CMD_STOP_PROGRAM)) {
+            this.fire(State.WAIT_STOP_PROGRAM);
+        } else {
+            LOG.info("WAIT_FOR_CMD {}", "Unexpected response from server");
             this.resetLastConnectionData();
             this.reset(State.ERROR_HTTP);
         }
     }
 
+    @Override
+    protected void handlePushError(Throwable e) {
+        LOG.info("WAIT_FOR_CMD {}", e.getMessage());
+        this.resetLastConnectionData();
+        this.reset(State.ERROR_HTTP);
+    }
+
     abstract protected void waitUpload();
     abstract protected void waitStopProgram();
 
     protected Pair<byte[], String> getProgram() throws IOException {
-        JSONObject deviceInfo = this.communicator.getDeviceInfo();
-        deviceInfo.put(KEY_TOKEN, this.token);
-        deviceInfo.put(KEY_CMD, CMD_REGISTER); // TODO why is the command register
+        this.invalidateRequestEncoder(); // the device info may have changed since the last push, e.g. the firmware version was checked
+        JSONObject deviceInfo = this.getRequestEncoder(this.communicator::getDeviceInfo).toJson(CMD_REGISTER); // TODO why is the command register
 
         return this.serverCommunicator.downloadProgram(deviceInfo);
     }
@@ -3,12 +3,13 @@ package de.fhg.iais.roberta.connection.wireless;
 import de.fhg.iais.roberta.connection.IDetector;
 import de.fhg.iais.roberta.connection.IRobot;
 import de.fhg.iais.roberta.connection.wireless.robotino.Robotino;
+import de.fhg.iais.roberta.util.ExecutionHelper;
+import de.fhg.iais.roberta.util.PropertyHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.InvocationTargetException;
 import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
@@ -22,14 +23,24 @@ public class HostnameDetector implements IDetector {
     private static final Map<String, Class<? extends AbstractWirelessRobot>> ROBOT_HOSTNAMES = new HashMap<>(1);
 
     static {
-        ROBOT_HOSTNAMES.put("robotino.local", Robotino.class);
+        for (String hostname : PropertyHelper.getInstance().getProperty("robotinoHostnames").split(",")) {
+            ROBOT_HOSTNAMES.put(hostname.trim(), Robotino.class);
+        }
     }
 
+    private static final long POSITIVE_TTL = Long.parseLong(PropertyHelper.getInstance().getProperty("hostnamePositiveTtl")) * 1000L;
+    private static final long NEGATIVE_TTL = Long.parseLong(PropertyHelper.getInstance().getProperty("hostnameNegativeTtl")) * 1000L;
+
+    private final HostnameResolver resolver = new HostnameResolver(ExecutionHelper.getInstance().getIoExecutor(), InetAddress::getByName, POSITIVE_TTL, NEGATIVE_TTL);
+
+    /**
+     * Returns the robots whose hostnames were resolved so far. The lookups of all hostnames run in parallel in the background, a detection never
+     * waits for the resolver of the operating system.
+     */
     @Override
     public List<IRobot> detectRobots() {
         Collection<IRobot> detectedRobots = new HashSet<>(5);
         for (Map.Entry<String, Class<? extends AbstractWirelessRobot>> entry : ROBOT_HOSTNAMES.entrySet()) {
-            LOG.info("Looking for {} in local network", entry.getKey());
             IRobot robot = detectLocalRobotsWithHostname(entry);
             if (robot != null) {
                 detectedRobots.add(robot);
@@ -45,12 +56,13 @@ public class HostnameDetector implements IDetector {
 
     public AbstractWirelessRobot detectLocalRobotsWithHostname(Map.Entry<String, Class<? extends AbstractWirelessRobot>> entry) {
         String hostname = entry.getKey();
+        InetAddress robotAddress = this.resolver.getAddress(hostname);
+        if (robotAddress == null) {
+            return null;
+        }
         try {
-            InetAddress robotAddress = InetAddress.getByName(hostname);
-            LOG.info("Found robot hostname {} with IP Address: {}", hostname, robotAddress);
+            LOG.debug("Found robot hostname {} with IP Address: {}", hostname, robotAddress);
             return entry.getValue().getConstructor(String.class, InetAddress.class).newInstance(hostname, robotAddress);
-        } catch (UnknownHostException e) {
-            LOG.info("can't find host {}", hostname);
         } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException |
                  InstantiationException e) {
             LOG.error("Robot class not implemented: {}", e.getMessage());
@@ -0,0 +1,81 @@
+package de.fhg.iais.roberta.connection.wireless;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Resolves hostnames in the background. Callers get the last known result immediately, an expired result is refreshed on the executor while the
+ * old one is still returned. Found addresses are kept longer than failed lookups, so a robot that is switched on is found quickly.
+ */
+final class HostnameResolver {
+    private static final Logger LOG = LoggerFactory.getLogger(HostnameResolver.class);
+
+    /**
+     * The blocking lookup of a hostname, {@link InetAddress#getByName(String)} outside of tests.
+     */
+    interface Lookup {
+        InetAddress lookup(String hostname) throws UnknownHostException;
+    }
+
+    private final Executor executor;
+    private final Lookup lookup;
+    private final long positiveTtl;
+    private final long negativeTtl;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param executor the executor the lookups run on
+     * @param lookup the blocking lookup
+     * @param positiveTtl the time in milliseconds a found address is used before it is looked up again
+     * @param negativeTtl the time in milliseconds after which a failed lookup is repeated
+     */
+    HostnameResolver(Executor executor, Lookup lookup, long positiveTtl, long negativeTtl) {
+        this.executor = executor;
+        this.lookup = lookup;
+        this.positiveTtl = positiveTtl;
+        this.negativeTtl = negativeTtl;
+    }
+
+    /**
+     * Returns the last known address of the hostname without blocking. Starts a lookup if there is no result yet or it expired.
+     *
+     * @param hostname the hostname to resolve
+     * @return the address, null if the hostname could not be resolved or was not looked up yet
+     */
+    InetAddress getAddress(String hostname) {
+        Entry entry = this.entries.computeIfAbsent(hostname, h -> new Entry());
+        synchronized ( entry ) {
+            if ( !entry.pending && (System.currentTimeMillis() >= entry.expiry) ) {
+                entry.pending = true;
+                this.executor.execute(() -> this.resolve(hostname, entry));
+            }
+            return entry.address;
+        }
+    }
+
+    private void resolve(String hostname, Entry entry) {
+        InetAddress address = null;
+        try {
+            address = this.lookup.lookup(hostname);
+        } catch ( UnknownHostException e ) {
+            LOG.debug("can't find host {}", hostname);
+        }
+        synchronized ( entry ) {
+            entry.address = address;
+            entry.expiry = System.currentTimeMillis() + ((address == null) ? this.negativeTtl : this.positiveTtl);
+            entry.pending = false;
+        }
+    }
+
+    private static final class Entry {
+        private InetAddress address = null; // guarded by this
+        private long expiry = 0L; // guarded by this
+        private boolean pending = false; // guarded by this
+    }
+}
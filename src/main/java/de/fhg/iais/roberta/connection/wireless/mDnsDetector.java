@@ -14,7 +14,9 @@ import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -24,14 +26,17 @@ import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import javax.jmdns.JmDNS;
+import javax.jmdns.ServiceEvent;
 import javax.jmdns.ServiceInfo;
+import javax.jmdns.ServiceListener;
 
 import de.fhg.iais.roberta.connection.IDetector;
 import de.fhg.iais.roberta.connection.IRobot;
 import de.fhg.iais.roberta.connection.wireless.nao.Nao;
 
 /**
- * Detector class for mDNS robots. Searches for mDNS in all network connections.
+ * Detector class for mDNS robots. Keeps one JmDNS browser per address of every active network connection. The browsers listen for the
+ * announcements of the robots, a detection only returns the robots the browsers currently know of.
  */
 public class mDnsDetector implements IDetector {
     private static final Logger LOG = LoggerFactory.getLogger(mDnsDetector.class);
@@ -41,43 +46,70 @@ public class mDnsDetector implements IDetector {
         SERVICE_TYPES.put("_naoqi._tcp.local.", Nao.class);
     }
 
-    private static final long TIMEOUT = 1000L;
+    private final Map<InetAddress, Browser> browsers = new HashMap<>(5); // guarded by this
 
+    /**
+     * Detects the robots the browsers know of. Synchronized, because a detection that hangs in the creation of a browser is abandoned by the scheduler
+     * and the next one may start while it still runs.
+     */
     @Override
-    public List<IRobot> detectRobots() {
+    public synchronized List<IRobot> detectRobots() {
+        try {
+            this.updateBrowsers();
+        } catch ( SocketException e ) {
+            LOG.error("Could not create or access socket: {}", e.getMessage());
+        }
+
         Collection<IRobot> detectedRobots = new HashSet<>(5);
+        for ( Browser browser : this.browsers.values() ) {
+            detectedRobots.addAll(browser.getRobots());
+        }
 
-        try {
-            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
-            while ( interfaces.hasMoreElements() ) {
-                NetworkInterface currentNif = interfaces.nextElement();
-                // Only regard active and non localhost networks
-                if ( !currentNif.isUp() || currentNif.isLoopback() ) {
-                    continue;
-                }
+        // Remove duplicates, filters the NAOs by name
+        return detectedRobots.stream().filter(distinctByKey(IRobot::getPrettyName)).collect(Collectors.toList());
+    }
 
-                // Check all associated addresses of network interface
-                Enumeration<InetAddress> addresses = currentNif.getInetAddresses();
-                while ( addresses.hasMoreElements() ) {
-                    InetAddress address = addresses.nextElement();
-                    LOG.info("Looking in {} {}", currentNif.getName(), address);
+    /**
+     * Starts a browser for every new address of the active network interfaces and closes the browsers of addresses that are gone.
+     *
+     * @throws SocketException if the network interfaces could not be listed
+     */
+    private void updateBrowsers() throws SocketException {
+        Set<InetAddress> currentAddresses = new HashSet<>(10);
+
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        while ( interfaces.hasMoreElements() ) {
+            NetworkInterface currentNif = interfaces.nextElement();
+            // Only regard active and non localhost networks
+            if ( !currentNif.isUp() || currentNif.isLoopback() ) {
+                continue;
+            }
 
-                    IRobot robot = detectRobotsOnAddress(address, currentNif);
-                    if ( robot != null ) {
-                        detectedRobots.add(robot);
+            // Check all associated addresses of network interface
+            Enumeration<InetAddress> addresses = currentNif.getInetAddresses();
+            while ( addresses.hasMoreElements() ) {
+                InetAddress address = addresses.nextElement();
+                currentAddresses.add(address);
+                if ( !this.browsers.containsKey(address) ) {
+                    LOG.info("Looking in {} {}", currentNif.getName(), address);
+                    try {
+                        this.browsers.put(address, Browser.open(address, currentNif));
+                    } catch ( IOException e ) {
+                        LOG.error("Could not start mDNS on {}: {}", address, e.getMessage());
                     }
                 }
             }
-        } catch ( UnknownHostException e ) {
-            LOG.error("Could not add network interface to IPv6 address: {}", e.getMessage());
-        } catch ( SocketException e ) {
-            LOG.error("Could not create or access socket: {}", e.getMessage());
-        } catch ( IOException e ) {
-            LOG.error("Something went wrong: {}", e.getMessage());
         }
 
-        // Remove duplicates, filters the NAOs by name
-        return detectedRobots.stream().filter(distinctByKey(IRobot::getPrettyName)).collect(Collectors.toList());
+        Iterator<Entry<InetAddress, Browser>> iterator = this.browsers.entrySet().iterator();
+        while ( iterator.hasNext() ) {
+            Entry<InetAddress, Browser> entry = iterator.next();
+            if ( !currentAddresses.contains(entry.getKey()) ) {
+                LOG.info("Stopped looking in {}", entry.getKey());
+                iterator.remove();
+                entry.getValue().close();
+            }
+        }
     }
 
     /**
@@ -94,39 +126,88 @@ public class mDnsDetector implements IDetector {
     }
 
     /**
-     * Uses JmDNS to find mDNS robots on the address and network interface.
-     *
-     * @param address the network address where JmDNS should look for the robot
-     * @param nif     the network interface the address is associated to
-     * @return a detected robot or null, if none was found
-     * @throws IOException          if something went wrong with the JmDNS creation
-     * @throws UnknownHostException if the network interface could not be added to the found address
+     * Uses JmDNS to keep the mDNS robots on one address and network interface. Services are added when they are resolved and removed when they
+     * are announced to be gone.
      */
-    private static AbstractWirelessRobot detectRobotsOnAddress(InetAddress address, NetworkInterface nif) throws IOException, UnknownHostException {
-        try (JmDNS jmDNS = JmDNS.create(address, address.getHostName())) {
-            for ( Entry<String, Class<? extends AbstractWirelessRobot>> entry : SERVICE_TYPES.entrySet() ) {
-                ServiceInfo[] list = jmDNS.list(entry.getKey(), TIMEOUT);
+    static final class Browser implements ServiceListener {
+        private final JmDNS jmDNS;
+        private final NetworkInterface nif;
+        private final Map<String, IRobot> robots = new ConcurrentHashMap<>();
+
+        /**
+         * @param jmDNS the JmDNS instance the browser listens to
+         * @param nif   the network interface the address of JmDNS is associated to
+         */
+        Browser(JmDNS jmDNS, NetworkInterface nif) {
+            this.jmDNS = jmDNS;
+            this.nif = nif;
+        }
+
+        /**
+         * Starts JmDNS on the address and listens for the robots.
+         *
+         * @param address the network address where JmDNS should look for the robots
+         * @param nif     the network interface the address is associated to
+         * @return the started browser
+         * @throws IOException if something went wrong with the JmDNS creation
+         */
+        private static Browser open(InetAddress address, NetworkInterface nif) throws IOException {
+            Browser browser = new Browser(JmDNS.create(address, address.getHostName()), nif);
+            for ( String type : SERVICE_TYPES.keySet() ) {
+                browser.jmDNS.addServiceListener(type, browser);
+            }
+            return browser;
+        }
 
-                for ( ServiceInfo info : list ) {
-                    InetAddress[] adresses = info.getInetAddresses();
+        Collection<IRobot> getRobots() {
+            return this.robots.values();
+        }
+
+        @Override
+        public void serviceAdded(ServiceEvent event) {
+            this.jmDNS.requestServiceInfo(event.getType(), event.getName());
+        }
+
+        @Override
+        public void serviceRemoved(ServiceEvent event) {
+            if ( this.robots.remove(event.getName()) != null ) {
+                LOG.info("mDNS robot {} is gone", event.getName());
+            }
+        }
 
-                    if ( adresses.length > 0 ) {
-                        InetAddress robotAddress = adresses[0];
-                        String name = info.getName();
+        @Override
+        public void serviceResolved(ServiceEvent event) {
+            Class<? extends AbstractWirelessRobot> robotClass = SERVICE_TYPES.get(event.getType().toLowerCase(Locale.ROOT));
+            ServiceInfo info = event.getInfo();
+            InetAddress[] adresses = info.getInetAddresses();
 
-                        // Add network interface to the IPv6 address, as JmDNS omits that information
-                        if ( robotAddress instanceof Inet6Address ) {
-                            robotAddress = Inet6Address.getByAddress(robotAddress.getHostName(), robotAddress.getAddress(), nif);
-                        }
+            if ( (robotClass != null) && (adresses.length > 0) ) {
+                InetAddress robotAddress = adresses[0];
+                String name = info.getName();
 
-                        LOG.info("Found mDNS robot {} with IP Address: {}", name, robotAddress);
-                        return entry.getValue().getConstructor(String.class, InetAddress.class).newInstance(name, robotAddress);
+                try {
+                    // Add network interface to the IPv6 address, as JmDNS omits that information
+                    if ( robotAddress instanceof Inet6Address ) {
+                        robotAddress = Inet6Address.getByAddress(robotAddress.getHostName(), robotAddress.getAddress(), this.nif);
                     }
+
+                    LOG.info("Found mDNS robot {} with IP Address: {}", name, robotAddress);
+                    IRobot robot = robotClass.getConstructor(String.class, InetAddress.class).newInstance(name, robotAddress);
+                    this.robots.put(name, robot);
+                } catch ( UnknownHostException e ) {
+                    LOG.error("Could not add network interface to IPv6 address: {}", e.getMessage());
+                } catch ( NoSuchMethodException | InvocationTargetException | IllegalAccessException | InstantiationException e ) {
+                    LOG.error("Robot class not implemented: {}", e.getMessage());
                 }
             }
-        } catch ( NoSuchMethodException | InvocationTargetException | IllegalAccessException | InstantiationException e ) {
-            LOG.error("Robot class not implemented: {}", e.getMessage());
         }
-        return null;
+
+        private void close() {
+            try {
+                this.jmDNS.close();
+            } catch ( IOException e ) {
+                LOG.error("Could not close mDNS: {}", e.getMessage());
+            }
+        }
     }
 }
@@ -0,0 +1,139 @@
+package de.fhg.iais.roberta.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import de.fhg.iais.roberta.connection.IConnector;
+import de.fhg.iais.roberta.connection.IConnector.State;
+import de.fhg.iais.roberta.connection.IRobot;
+
+/**
+ * Runs one connector per detected robot at the same time. Every connector registers with its own token and is connected without a button press.
+ * Connectors of robots that were not detected for a while are closed.
+ */
+public class ConnectorHub {
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectorHub.class);
+
+    private static final long RECONNECT_DELAY = 5000L;
+
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final long robotTimeout;
+    private final Map<IRobot, HubConnection> connections = new ConcurrentHashMap<>();
+
+    /**
+     * @param executor the executor the connectors run on, it has to provide a thread for every connector that is blocked by the robot or server
+     * @param scheduler the scheduler for the waits of the connectors and the delayed connects
+     * @param robotTimeout the time in milliseconds after which the connector of a robot that is no longer detected is closed
+     */
+    public ConnectorHub(Executor executor, ScheduledExecutorService scheduler, long robotTimeout) {
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.robotTimeout = robotTimeout;
+    }
+
+    /**
+     * Starts a connector for each newly detected robot and closes the connectors of robots that were not detected within the timeout.
+     *
+     * @param detectedRobots the robots detected since the last update, detectors that did not finish yet may be missing
+     */
+    public void update(Collection<? extends IRobot> detectedRobots) {
+        for ( IRobot robot : detectedRobots ) {
+            this.connections.computeIfAbsent(robot, this::start).lastSeen = System.currentTimeMillis();
+        }
+
+        long now = System.currentTimeMillis();
+
+        Iterator<Entry<IRobot, HubConnection>> iterator = this.connections.entrySet().iterator();
+        while ( iterator.hasNext() ) {
+            Entry<IRobot, HubConnection> entry = iterator.next();
+            if ( (now - entry.getValue().lastSeen) > this.robotTimeout ) {
+                LOG.info("{} is no longer detected, closing its connector", entry.getKey().getPrettyName());
+                iterator.remove();
+                entry.getValue().connector.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the connectors that are currently running.
+     *
+     * @return the running connectors
+     */
+    public List<IConnector<?>> getConnectors() {
+        List<IConnector<?>> connectors = new ArrayList<>(this.connections.size());
+        for ( HubConnection connection : this.connections.values() ) {
+            connectors.add(connection.connector);
+        }
+        return connectors;
+    }
+
+    /**
+     * Closes all connectors.
+     */
+    public void close() {
+        for ( HubConnection connection : this.connections.values() ) {
+            connection.connector.close();
+        }
+        this.connections.clear();
+    }
+
+    private HubConnection start(IRobot robot) {
+        LOG.info("Starting connector for {}", robot.getPrettyName());
+        HubConnection connection = new HubConnection(robot.createConnector());
+        connection.connector.registerListener(event -> connection.update(event.getState()));
+        CompletableFuture<Void> finished = connection.connector.runAsync(this.executor, this.scheduler);
+        // A connector that stopped by itself is started again when its robot is detected the next time
+        finished.whenComplete((result, e) -> this.connections.remove(robot, connection));
+        return connection;
+    }
+
+    private final class HubConnection {
+        private final IConnector<?> connector;
+        private volatile long lastSeen = 0L;
+        private volatile State state = State.DISCOVER;
+        private boolean connectedBefore = false;
+
+        private HubConnection(IConnector<?> connector) {
+            this.connector = connector;
+        }
+
+        private void update(State state) {
+            this.state = state;
+            switch ( state ) {
+                case WAIT_FOR_CONNECT_BUTTON_PRESS:
+                    // Connect right away the first time, retries after an error are delayed to not flood the server
+                    long delay = this.connectedBefore ? RECONNECT_DELAY : 0L;
+                    this.connectedBefore = true;
+                    ConnectorHub.this.scheduler.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+                    break;
+                case WAIT_FOR_SERVER:
+                    LOG.info("{} is waiting for token {}", this.connector.getRobot().getPrettyName(), this.connector.getToken());
+                    break;
+                case WAIT_FOR_CMD:
+                    LOG.info("{} is connected with token {}", this.connector.getRobot().getPrettyName(), this.connector.getToken());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void connect() {
+            if ( this.state == State.WAIT_FOR_CONNECT_BUTTON_PRESS ) {
+                this.connector.connect();
+            }
+        }
+    }
+}
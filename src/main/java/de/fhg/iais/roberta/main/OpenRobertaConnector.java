@@ -5,10 +5,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.ResourceBundle;
-import java.util.Set;
 
 import de.fhg.iais.roberta.connection.IConnector;
 import de.fhg.iais.roberta.connection.IDetector;
@@ -17,16 +16,26 @@ import de.fhg.iais.roberta.connection.wired.RndisDetector;
 import de.fhg.iais.roberta.connection.wired.SerialRobotDetector;
 import de.fhg.iais.roberta.connection.wireless.mDnsDetector;
 import de.fhg.iais.roberta.ui.main.MainController;
+import de.fhg.iais.roberta.util.ExecutionHelper;
 import de.fhg.iais.roberta.util.PropertyHelper;
 
 class OpenRobertaConnector {
     public static void main(String args[]) {
-        new OpenRobertaConnector().run();
+        boolean hubMode = Arrays.asList(args).contains(ARG_HUB) || Boolean.parseBoolean(PropertyHelper.getInstance().getProperty("hubMode"));
+        if ( hubMode ) {
+            new OpenRobertaConnector().runHub();
+        } else {
+            new OpenRobertaConnector().run();
+        }
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(OpenRobertaConnector.class);
 
+    private static final String ARG_HUB = "--hub";
+
     private static final long TIMEOUT = 1000L;
+    private static final long ROBOT_TIMEOUT = 5000L;
+    private static final long HUB_ROBOT_TIMEOUT = 10000L;
     private static final long HELP_THRESHOLD = Long.parseLong(PropertyHelper.getInstance().getProperty("timeToHelp")) * 1000L;
 
     private final MainController controller;
@@ -52,9 +61,10 @@ class OpenRobertaConnector {
 
         // Main loop, repeats until the program is closed
         while ( !Thread.currentThread().isInterrupted() ) {
-            Set<IRobot> robots = new HashSet<>(5);
+            RobotRegistry robots = new RobotRegistry(ROBOT_TIMEOUT);
             IRobot selectedRobot = null;
             this.robotDetectorHelper.reset();
+            this.controller.setRobotList(robots.getRobots()); // clear the robots shown before the last connection, later only changes are shown
 
             while ( (selectedRobot == null) ) {
                 if ( Thread.currentThread().isInterrupted() ) {
@@ -64,17 +74,19 @@ class OpenRobertaConnector {
                 selectedRobot = this.robotDetectorHelper.getSelectedRobot();
 
                 // Update frontend with currently detected robots
-                robots.addAll(this.robotDetectorHelper.getDetectedRobots());
-                this.controller.setRobotList(robots);
+                if ( !robots.update(this.robotDetectorHelper.getDetectedRobots()).isEmpty() ) {
+                    this.controller.setRobotList(robots.getRobots());
+                }
 
                 // Connect to robot if only one was found
-                if ( this.robotDetectorHelper.allDetectorsRanOnce() && (robots.size() == 1) ) {
-                    selectedRobot = (IRobot) robots.toArray()[0];
+                List<IRobot> availableRobots = robots.getRobots();
+                if ( this.robotDetectorHelper.allDetectorsRanOnce() && (availableRobots.size() == 1) ) {
+                    selectedRobot = availableRobots.get(0);
                 }
 
                 // Repeat until a robot is available or one was selected
                 try {
-                    Thread.sleep(TIMEOUT);
+                    this.robotDetectorHelper.awaitChange(TIMEOUT);
                     helpTimer += (System.currentTimeMillis() - previousTime);
 
                     if ( (helpTimer > HELP_THRESHOLD) && showHelp ) {
@@ -96,8 +108,32 @@ class OpenRobertaConnector {
             IConnector<?> connector = selectedRobot.createConnector();
 
             this.controller.setConnector(connector);
-            connector.run(); // Blocking until the connector is finished
+            ExecutionHelper execution = ExecutionHelper.getInstance();
+            connector.runAsync(execution.getIoExecutor(), execution.getScheduler()).join(); // Blocking until the connector is finished
             showHelp = false;
         }
     }
+
+    /**
+     * Runs a connector for every detected robot at the same time instead of waiting for a robot selection. Used to serve a whole room of robots from
+     * one computer.
+     */
+    void runHub() {
+        ExecutionHelper execution = ExecutionHelper.getInstance();
+        ConnectorHub hub = new ConnectorHub(execution.getIoExecutor(), execution.getScheduler(), HUB_ROBOT_TIMEOUT);
+        LOG.info("Running in hub mode");
+
+        while ( !Thread.currentThread().isInterrupted() ) {
+            hub.update(this.robotDetectorHelper.getDetectedRobots());
+            this.controller.setHubConnectors(hub.getConnectors());
+
+            try {
+                this.robotDetectorHelper.awaitChange(TIMEOUT);
+            } catch ( InterruptedException e ) {
+                LOG.error("Thread was interrupted while running the hub: {}", e.getMessage());
+                Thread.currentThread().interrupt();
+            }
+        }
+        hub.close();
+    }
 }
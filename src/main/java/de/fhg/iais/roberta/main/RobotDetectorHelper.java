@@ -1,94 +1,118 @@
 package de.fhg.iais.roberta.main;
 
-import org.apache.commons.lang3.concurrent.ConcurrentUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.Executor;
 import java.util.concurrent.FutureTask;
 
 import de.fhg.iais.roberta.connection.IDetector;
 import de.fhg.iais.roberta.connection.IRobot;
+import de.fhg.iais.roberta.util.ExecutionHelper;
 import de.fhg.iais.roberta.util.IOraListener;
 
 /**
  * Helper class for robot detection.
- * Creates callables for each detector which return the respective detected robots.
+ * Runs each detector in the background, a detector whose results do not change is run less often. A detector that reports a change, e.g. a plugged
+ * in USB device, is run again at once. The results of each detector are published as soon as it finishes, detectors that take longer than the
+ * timeout are cancelled.
  */
 public class RobotDetectorHelper implements IOraListener<IRobot> {
     private static final Logger LOG = LoggerFactory.getLogger(RobotDetectorHelper.class);
 
-    private static final int POOL_SIZE = 4;
+    private static final long MIN_SCAN_INTERVAL = 1000L;
+    private static final long DETECTOR_TIMEOUT = 5000L;
 
-    private final ExecutorService executorService = Executors.newFixedThreadPool(POOL_SIZE);
-    private final Map<IDetector, Future<List<IRobot>>> futures = new HashMap<>(5);
-    private final Map<IDetector, Boolean> ranOnce = new HashMap<>(5);
+    private final Executor executorService = ExecutionHelper.getInstance().getIoExecutor();
+    private final List<DetectorTask> tasks = new ArrayList<>(5);
 
-    private IRobot selectedRobot = null;
+    private volatile IRobot selectedRobot = null;
+
+    // Counts the changes of the results and the selection, getDetectedRobots remembers the count it has seen
+    private final Object signal = new Object();
+    private long changes = 0L;
+    private long seenChanges = 0L;
 
     /**
      * Constructor for the robot detector helper.
-     * Starts the detectors and registers the corresponding futures in a map.
+     * Starts the detectors.
      *
      * @param detectors a list of detectors that should be used to find robots
      */
     public RobotDetectorHelper(List<? extends IDetector> detectors) {
+        long now = System.currentTimeMillis();
         for ( IDetector detector : detectors ) {
-            this.futures.put(detector, this.executorService.submit(detector::detectRobots));
-            this.ranOnce.put(detector, false);
+            DetectorTask task = new DetectorTask(detector);
+            this.tasks.add(task);
+            detector.addChangeListener(task::changed);
+            task.poll(now);
         }
     }
 
     /**
      * Returns a list of currently detected robots.
-     * Checks the detectors, finished detectors are restarted.
+     * Contains the last results of each detector, detectors that are due are started and detectors that take too long are cancelled.
      *
      * @return a list of currently detected robots
      */
     public List<IRobot> getDetectedRobots() {
+        synchronized ( this.signal ) {
+            this.seenChanges = this.changes;
+        }
         List<IRobot> robots = new ArrayList<>(5);
+        long now = System.currentTimeMillis();
+        for ( DetectorTask task : this.tasks ) {
+            task.poll(now);
+            robots.addAll(task.getRobots());
+        }
+        return robots;
+    }
 
-        // Check each detector future
-        for ( Entry<IDetector, Future<List<IRobot>>> entry : this.futures.entrySet() ) {
-            IDetector detector = entry.getKey();
-            Future<List<IRobot>> future = entry.getValue();
-
-            // If the future is done add the results to the list and start the detector again
-            if ( future.isDone() ) {
-                try {
-                    robots.addAll(future.get());
-                } catch ( InterruptedException e ) {
-                    LOG.info("Future was interrupted: {}", e.getMessage());
-                } catch ( ExecutionException e ) {
-                    LOG.info("Exception during callable: {}", e.getMessage());
+    /**
+     * Waits until the results of a detector or the selected robot changed since the last call of {@link #getDetectedRobots()}, so robots show up as
+     * soon as they are detected.
+     *
+     * @param timeout the longest time to wait in milliseconds
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public void awaitChange(long timeout) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeout;
+        synchronized ( this.signal ) {
+            while ( this.changes == this.seenChanges ) {
+                long remaining = end - System.currentTimeMillis();
+                if ( remaining <= 0L ) {
+                    return;
                 }
-
-                // Enqueue another search process
-                this.futures.put(detector, this.executorService.submit(detector::detectRobots));
-
-                // Register that detector ran once
-                this.ranOnce.put(detector, true);
+                this.signal.wait(remaining);
             }
         }
-        return robots;
+    }
+
+    private void signalChange() {
+        synchronized ( this.signal ) {
+            this.changes++;
+            this.signal.notifyAll();
+        }
     }
 
     /**
-     * Returns whether all detectors ran at least once.
+     * Returns whether all detectors ran at least once. A detector that was cancelled after the timeout counts as run.
      *
      * @return whether each detector ran at least once
      */
     public boolean allDetectorsRanOnce() {
-        return !this.ranOnce.containsValue(false);
+        for ( DetectorTask task : this.tasks ) {
+            if ( !task.hasRanOnce() ) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -103,6 +127,7 @@ public class RobotDetectorHelper implements IOraListener<IRobot> {
     @Override
     public void update(IRobot object) {
         this.selectedRobot = object;
+        this.signalChange();
     }
 
     /**
@@ -110,11 +135,118 @@ public class RobotDetectorHelper implements IOraListener<IRobot> {
      */
     public void reset() {
         this.selectedRobot = null;
-        for ( Entry<IDetector, Boolean> entry : this.ranOnce.entrySet() ) {
-            entry.setValue(false);
+        for ( DetectorTask task : this.tasks ) {
+            task.reset();
+        }
+    }
+
+    /**
+     * Schedules the runs of one detector.
+     */
+    private final class DetectorTask {
+        private final IDetector detector;
+        private final long maxInterval;
+
+        // all guarded by this
+        private long interval = MIN_SCAN_INTERVAL;
+        private long nextRun = 0L;
+        private long deadline = 0L;
+        private FutureTask<List<IRobot>> running = null;
+        private List<IRobot> robots = Collections.emptyList();
+        private boolean ranOnce = false;
+        private boolean changedWhileRunning = false;
+
+        private DetectorTask(IDetector detector) {
+            this.detector = detector;
+            this.maxInterval = Math.max(detector.getMaxScanInterval(), MIN_SCAN_INTERVAL);
         }
-        for ( Entry<IDetector, Future<List<IRobot>>> entry : this.futures.entrySet() ) {
-            entry.setValue(ConcurrentUtils.constantFuture(Collections.emptyList()));
+
+        private synchronized void poll(long now) {
+            if ( this.running != null ) {
+                if ( now > this.deadline ) {
+                    LOG.warn("{} did not finish within {} ms, cancelling it", this.detector.getClass().getSimpleName(), DETECTOR_TIMEOUT);
+                    FutureTask<List<IRobot>> timedOut = this.running;
+                    this.finish(timedOut, this.robots, now);
+                    timedOut.cancel(true);
+                }
+            } else if ( now >= this.nextRun ) {
+                FutureTask<List<IRobot>> future = new FutureTask<List<IRobot>>(this.detector::detectRobots) {
+                    @Override
+                    protected void done() {
+                        DetectorTask.this.complete(this);
+                    }
+                };
+                this.running = future;
+                this.deadline = now + DETECTOR_TIMEOUT;
+                RobotDetectorHelper.this.executorService.execute(future);
+            }
+        }
+
+        /**
+         * Runs the detector at once, or right after the current run, because its results are outdated.
+         */
+        private synchronized void changed() {
+            this.interval = MIN_SCAN_INTERVAL;
+            this.nextRun = 0L;
+            if ( this.running != null ) {
+                this.changedWhileRunning = true;
+            } else {
+                this.poll(System.currentTimeMillis());
+            }
+        }
+
+        private void complete(FutureTask<List<IRobot>> future) {
+            List<IRobot> result = Collections.emptyList();
+            try {
+                result = future.get();
+            } catch ( InterruptedException e ) {
+                LOG.info("Future was interrupted: {}", e.getMessage());
+                Thread.currentThread().interrupt();
+            } catch ( ExecutionException e ) {
+                LOG.info("Exception during callable: {}", e.getMessage());
+            } catch ( CancellationException e ) {
+                return;
+            }
+            synchronized ( this ) {
+                long now = System.currentTimeMillis();
+                this.finish(future, result, now);
+                if ( this.changedWhileRunning ) {
+                    this.changedWhileRunning = false;
+                    this.nextRun = now;
+                    this.poll(now);
+                }
+            }
+        }
+
+        private void finish(FutureTask<List<IRobot>> future, List<IRobot> result, long now) {
+            if ( this.running != future ) {
+                return;
+            }
+            this.running = null;
+            // Run the detector often while robots come and go, less often while nothing changes
+            boolean changed = !new HashSet<>(result).equals(new HashSet<>(this.robots));
+            this.interval = changed ? MIN_SCAN_INTERVAL : Math.min(this.interval * 2, this.maxInterval);
+            this.nextRun = now + this.interval;
+            this.robots = new ArrayList<>(result);
+            if ( changed || !this.ranOnce ) {
+                RobotDetectorHelper.this.signalChange();
+            }
+            this.ranOnce = true;
+        }
+
+        private synchronized List<IRobot> getRobots() {
+            return this.robots;
+        }
+
+        private synchronized boolean hasRanOnce() {
+            return this.ranOnce;
+        }
+
+        private synchronized void reset() {
+            this.robots = Collections.emptyList();
+            this.ranOnce = false;
+            this.interval = MIN_SCAN_INTERVAL;
+            this.nextRun = 0L;
         }
     }
 }
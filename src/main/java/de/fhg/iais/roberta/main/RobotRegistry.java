@@ -0,0 +1,127 @@
+package de.fhg.iais.roberta.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import de.fhg.iais.roberta.connection.IRobot;
+
+/**
+ * Keeps the robots that are currently available. A robot stays registered as long as it is detected again within the timeout, so detectors that
+ * did not finish in one round do not make their robots flicker. Each update returns only what changed. Not thread safe, it is meant to be used by
+ * the detection loop.
+ */
+public class RobotRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(RobotRegistry.class);
+
+    private final long robotTimeout;
+    private final Map<IRobot, Registration> registrations = new LinkedHashMap<>();
+
+    /**
+     * @param robotTimeout the time in milliseconds after which a robot that is no longer detected is removed
+     */
+    public RobotRegistry(long robotTimeout) {
+        this.robotTimeout = robotTimeout;
+    }
+
+    /**
+     * Registers the detected robots and removes the robots that were not detected within the timeout.
+     *
+     * @param detectedRobots the robots detected since the last update, detectors that did not finish yet may be missing
+     * @return the robots that were added, removed or changed their name
+     */
+    public Delta update(Collection<? extends IRobot> detectedRobots) {
+        long now = System.currentTimeMillis();
+        List<IRobot> added = new ArrayList<>(0);
+        List<IRobot> removed = new ArrayList<>(0);
+        List<IRobot> changed = new ArrayList<>(0);
+
+        for ( IRobot robot : detectedRobots ) {
+            Registration registration = this.registrations.get(robot);
+            if ( registration == null ) {
+                LOG.info("{} was detected", robot.getPrettyName());
+                this.registrations.put(robot, new Registration(robot, now));
+                added.add(robot);
+            } else {
+                registration.lastSeen = now;
+                if ( !registration.robot.getPrettyName().equals(robot.getPrettyName()) ) {
+                    registration.robot = robot;
+                    changed.add(robot);
+                }
+            }
+        }
+
+        Iterator<Entry<IRobot, Registration>> iterator = this.registrations.entrySet().iterator();
+        while ( iterator.hasNext() ) {
+            Registration registration = iterator.next().getValue();
+            if ( (now - registration.lastSeen) > this.robotTimeout ) {
+                LOG.info("{} is no longer detected", registration.robot.getPrettyName());
+                iterator.remove();
+                removed.add(registration.robot);
+            }
+        }
+        return new Delta(added, removed, changed);
+    }
+
+    /**
+     * Returns the registered robots in the order they were detected.
+     *
+     * @return the currently available robots
+     */
+    public List<IRobot> getRobots() {
+        List<IRobot> robots = new ArrayList<>(this.registrations.size());
+        for ( Registration registration : this.registrations.values() ) {
+            robots.add(registration.robot);
+        }
+        return robots;
+    }
+
+    private static final class Registration {
+        private IRobot robot;
+        private long lastSeen;
+
+        private Registration(IRobot robot, long lastSeen) {
+            this.robot = robot;
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    /**
+     * The changes of one update of the registry.
+     */
+    public static final class Delta {
+        private final List<IRobot> added;
+        private final List<IRobot> removed;
+        private final List<IRobot> changed;
+
+        Delta(List<IRobot> added, List<IRobot> removed, List<IRobot> changed) {
+            this.added = Collections.unmodifiableList(added);
+            this.removed = Collections.unmodifiableList(removed);
+            this.changed = Collections.unmodifiableList(changed);
+        }
+
+        public List<IRobot> getAdded() {
+            return this.added;
+        }
+
+        public List<IRobot> getRemoved() {
+            return this.removed;
+        }
+
+        public List<IRobot> getChanged() {
+            return this.changed;
+        }
+
+        public boolean isEmpty() {
+            return this.added.isEmpty() && this.removed.isEmpty() && this.changed.isEmpty();
+        }
+    }
+}
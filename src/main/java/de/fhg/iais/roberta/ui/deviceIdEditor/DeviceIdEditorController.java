@@ -11,8 +11,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.ResourceBundle;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import javax.swing.JTable;
@@ -24,6 +23,7 @@ import de.fhg.iais.roberta.connection.wired.WiredRobotType;
 import de.fhg.iais.roberta.ui.IController;
 import de.fhg.iais.roberta.ui.OraPopup;
 import de.fhg.iais.roberta.ui.OraTable.FixedTableModel;
+import de.fhg.iais.roberta.util.ExecutionHelper;
 import de.fhg.iais.roberta.util.IOraUiListener;
 import de.fhg.iais.roberta.util.SerialDevice;
 import de.fhg.iais.roberta.util.WiredRobotIdFileHelper;
@@ -43,7 +43,7 @@ public class DeviceIdEditorController implements IController {
 
     private final ResourceBundle messages;
 
-    private ScheduledExecutorService executorService = null;
+    private ScheduledFuture<?> deviceUpdate = null;
 
     public DeviceIdEditorController(ResourceBundle rb) {
         this.deviceIdEditorView = new DeviceIdEditorView(rb, new DeviceIdEditorViewListener());
@@ -72,12 +72,11 @@ public class DeviceIdEditorController implements IController {
 
     public void showEditor() {
         // Also update the connected devices
-        this.executorService = Executors.newSingleThreadScheduledExecutor();
-
-        this.executorService.scheduleAtFixedRate(() -> {
+        ExecutionHelper execution = ExecutionHelper.getInstance();
+        this.deviceUpdate = execution.getScheduler().scheduleWithFixedDelay(() -> execution.getIoExecutor().execute(() -> {
             List<List<Object>> devicesTableData = getDevicesTableData();
             this.deviceIdEditorView.getTblDevices().updateTable(devicesTableData, Arrays.asList(2, 3));
-        }, 0L, 1L, TimeUnit.SECONDS);
+        }), 0L, 1L, TimeUnit.SECONDS);
 
         this.deviceIdEditorView.setVisible(true);
     }
@@ -217,7 +216,9 @@ public class DeviceIdEditorController implements IController {
 
         private void close() {
             LOG.info("close");
-            DeviceIdEditorController.this.executorService.shutdownNow();
+            if ( DeviceIdEditorController.this.deviceUpdate != null ) {
+                DeviceIdEditorController.this.deviceUpdate.cancel(false);
+            }
             DeviceIdEditorController.this.deviceIdEditorView.dispose();
         }
     }
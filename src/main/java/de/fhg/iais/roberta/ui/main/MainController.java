@@ -14,11 +14,11 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.ResourceBundle;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 import javax.swing.*;
@@ -78,6 +78,7 @@ public class MainController implements IController, IOraListenable<IRobot> {
 
     // For the robot selection if there is more than one robot available
     private List<IRobot> robotList = null;
+    private List<String> hubEntries = Collections.emptyList();
 
     private boolean connected;
 
@@ -123,13 +124,36 @@ public class MainController implements IController, IOraListenable<IRobot> {
         this.mainView.setUpdateButton(updateInfo.getStatus());
     }
 
-    public void setRobotList(Set<? extends IRobot> robotList) {
+    public void setRobotList(Collection<? extends IRobot> robotList) {
         this.robotList = new ArrayList<>(robotList);
         this.mainView.showTopRobots(this.robotList.stream().map(IRobot::getPrettyName).collect(Collectors.toList()));
     }
 
+    /**
+     * Shows the robots served by the hub together with their tokens.
+     *
+     * @param connectors the running connectors of the hub
+     */
+    public void setHubConnectors(Collection<? extends IConnector<?>> connectors) {
+        this.robotList = connectors.stream().<IRobot> map(IConnector::getRobot).collect(Collectors.toList());
+        List<String> entries = connectors.stream().map(MainController::getHubEntry).collect(Collectors.toList());
+        if ( !entries.equals(this.hubEntries) ) {
+            this.hubEntries = entries;
+            this.mainView.showTopRobots(entries);
+        }
+    }
+
+    private static String getHubEntry(IConnector<?> connector) {
+        String prettyName = connector.getRobot().getPrettyName();
+        return connector.getToken().isEmpty() ? prettyName : (prettyName + ": " + connector.getToken());
+    }
+
     @Override
     public void setState(State state) {
+        this.setState(state, Collections.emptyList());
+    }
+
+    private void setState(State state, List<String> details) {
         LOG.info("Setting state to {}", state);
         switch ( state ) {
             case DISCOVER:
@@ -198,11 +222,10 @@ public class MainController implements IController, IOraListenable<IRobot> {
                 this.showAttentionPopup("errorAuth");
                 break;
             case ERROR_UPLOAD_TO_ROBOT:
-                List<String> additionalInfo = new ArrayList<>(state.getAdditionalInfo());
-                if ( additionalInfo.isEmpty() ) {
+                if ( details.isEmpty() ) {
                     this.showAttentionPopup("errorUploadToRobot", "");
                 } else {
-                    String errorOutput = additionalInfo.get(0);
+                    String errorOutput = details.get(0);
                     if ( rb.containsKey(errorOutput) ) {
                         errorOutput = rb.getString(errorOutput);
                     }
@@ -234,7 +257,7 @@ public class MainController implements IController, IOraListenable<IRobot> {
     public void setConnector(IConnector<?> connector) {
         LOG.debug("setConnector: {}", connector.getClass().getSimpleName());
         this.connector = connector;
-        this.connector.registerListener(this::setState);
+        this.connector.registerListener(event -> this.setState(event.getState(), event.getDetails()));
 
         this.mainView.showTopTokenServer();
 
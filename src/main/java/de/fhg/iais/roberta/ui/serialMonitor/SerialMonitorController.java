@@ -6,9 +6,8 @@ import org.slf4j.LoggerFactory;
 import java.awt.event.ActionEvent;
 import java.awt.event.WindowEvent;
 import java.util.ResourceBundle;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import javax.swing.SwingUtilities;
 
@@ -17,6 +16,7 @@ import de.fhg.iais.roberta.connection.IConnector.State;
 import de.fhg.iais.roberta.connection.SerialLoggingTask;
 import de.fhg.iais.roberta.connection.wired.IWiredRobot;
 import de.fhg.iais.roberta.ui.IController;
+import de.fhg.iais.roberta.util.ExecutionHelper;
 import de.fhg.iais.roberta.util.IOraUiListener;
 
 import static de.fhg.iais.roberta.ui.serialMonitor.SerialMonitorView.CMD_CLEAR;
@@ -27,7 +27,6 @@ public class SerialMonitorController implements IController {
 
     private final SerialMonitorView serialMonitorView;
 
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
     private Future<Void> serialLoggingFuture = null;
 
     private String portName = null;
@@ -42,7 +41,7 @@ public class SerialMonitorController implements IController {
     @Override
     public void setConnector(IConnector<?> connector) {
         LOG.debug("setConnector: {}", connector.getClass().getSimpleName());
-        connector.registerListener(this::setState);
+        connector.registerListener(event -> this.setState(event.getState()));
         this.portName = ((IWiredRobot) connector.getRobot()).getPort();
         this.robot = connector.getRobot().getName();
     }
@@ -79,8 +78,9 @@ public class SerialMonitorController implements IController {
         LOG.debug("restartSerialLogging");
         this.stopSerialLogging();
 
-        this.serialLoggingFuture =
-            this.executorService.submit(new SerialLoggingTask(this::appendSerial, this.portName, this.serialMonitorView.getSerialRate()));
+        FutureTask<Void> serialLogging = new FutureTask<>(new SerialLoggingTask(this::appendSerial, this.portName, this.serialMonitorView.getSerialRate()));
+        this.serialLoggingFuture = serialLogging;
+        ExecutionHelper.getInstance().startThread("ora-serial-monitor", serialLogging); // runs until it is cancelled
     }
 
     private void appendSerial(byte[] readBuffer) {
@@ -0,0 +1,100 @@
+package de.fhg.iais.roberta.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides the threads shared by the connectors, detectors and the UI. Blocking robot and server I/O runs on the I/O executor, it starts a thread for
+ * every task that finds no idle one, up to ioPoolMaxSize threads. Tasks never wait in a queue, because tasks on the pool wait for other tasks on it,
+ * e.g. the parallel downloads of the EV3 firmware update. Beyond the limit tasks are rejected with a logged error. Its threads end when they were
+ * idle for a minute. Loops that run as long as the application or a window get their own thread, see {@link #startThread(String, Runnable)}. Timers
+ * run on a small scheduler, scheduled tasks should only hand blocking work over to the I/O executor. All threads are named daemon threads, so they do
+ * not keep the application alive. Both executors live as long as the application, the I/O executor is only handed out as an {@link Executor} so it
+ * cannot be shut down.
+ */
+public final class ExecutionHelper {
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutionHelper.class);
+
+    private static final long IO_KEEP_ALIVE = 60L;
+
+    private final Executor ioExecutor;
+    private final ScheduledExecutorService scheduler;
+
+    private ExecutionHelper(int ioPoolMaxSize, int schedulerPoolSize) {
+        ThreadPoolExecutor ioPool = new ThreadPoolExecutor(0, ioPoolMaxSize, IO_KEEP_ALIVE, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            createThreadFactory("ora-io-"), ExecutionHelper::reject);
+        this.ioExecutor = ioPool::execute;
+        ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(schedulerPoolSize, createThreadFactory("ora-timer-"));
+        scheduledExecutor.setRemoveOnCancelPolicy(true);
+        this.scheduler = Executors.unconfigurableScheduledExecutorService(scheduledExecutor);
+    }
+
+    private static final class InstanceHolder {
+        private static final ExecutionHelper instance = new ExecutionHelper(Integer.parseInt(PropertyHelper.getInstance().getProperty("ioPoolMaxSize")),
+            Integer.parseInt(PropertyHelper.getInstance().getProperty("schedulerPoolSize")));
+    }
+
+    public static ExecutionHelper getInstance() {
+        return InstanceHolder.instance;
+    }
+
+    /**
+     * Returns the executor for tasks that block on I/O, e.g. detectors, serial communication or server requests. Tasks that have to be cancelled can be
+     * wrapped in a {@link java.util.concurrent.FutureTask}.
+     *
+     * @return the shared I/O executor
+     */
+    public Executor getIoExecutor() {
+        return this.ioExecutor;
+    }
+
+    /**
+     * Returns the scheduler for delayed and periodic tasks. Its few threads are shared by everyone, tasks must not block. Shutting it down is not
+     * supported.
+     *
+     * @return the shared scheduler
+     */
+    public ScheduledExecutorService getScheduler() {
+        return this.scheduler;
+    }
+
+    /**
+     * Starts a task that runs as long as the application or a window on its own named daemon thread, so it does not hold a thread of the I/O
+     * executor. It is stopped by interrupting the thread.
+     *
+     * @param name the name of the thread
+     * @param task the task
+     * @return the started thread
+     */
+    public Thread startThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void reject(Runnable task, ThreadPoolExecutor pool) {
+        LOG.error("All {} I/O threads are busy, rejecting {}", pool.getMaximumPoolSize(), task);
+        throw new RejectedExecutionException("All I/O threads are busy");
+    }
+
+    private static ThreadFactory createThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,288 @@
+package de.fhg.iais.roberta.util;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.lang3.SystemUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Size bounded on-disk cache for downloaded user programs. Programs are stored by the SHA-256 hash of their content, so an unchanged program can be
+ * recognized without comparing the files. If the server sent an ETag, the program can also be found by it before it is downloaded again. The least
+ * recently used programs are removed when the cache grows beyond its size, except the ones that are pinned because a connector still uses them.
+ */
+public final class ProgramCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ProgramCache.class);
+
+    private static final String PROGRAM_CACHE_DIRECTORY =
+        SystemUtils.getUserHome().getPath() + File.separator + "OpenRobertaConnector" + File.separator + "programs";
+    private static final String DEFAULT_FILENAME = "program";
+
+    private final Path directory;
+    private final long maxSize;
+    private final Map<String, Program> programsByEtag = new ConcurrentHashMap<>();
+    private final Map<Path, Integer> pins = new HashMap<>();
+
+    ProgramCache(Path directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    private static final class InstanceHolder {
+        private static final ProgramCache instance =
+            new ProgramCache(Paths.get(PROGRAM_CACHE_DIRECTORY), Long.parseLong(PropertyHelper.getInstance().getProperty("programCacheSize")));
+    }
+
+    public static ProgramCache getInstance() {
+        return InstanceHolder.instance;
+    }
+
+    /**
+     * Returns the cached program that the server identified with the ETag. The program counts as used.
+     *
+     * @param etag the ETag sent by the server together with the program
+     * @return the cached program, or null if it is not or no longer cached
+     */
+    public Program get(String etag) {
+        Program program = this.programsByEtag.get(etag);
+        if ( program == null ) {
+            return null;
+        }
+        if ( !Files.exists(program.getPath()) ) {
+            this.programsByEtag.remove(etag, program);
+            return null;
+        }
+        touch(program.getPath().getParent());
+        return program;
+    }
+
+    /**
+     * Keeps the program in the cache until it is unpinned as often as it was pinned. A connector pins the program it uses, e.g. the one that is on the
+     * robot, so that it can still be read after other programs were added.
+     *
+     * @param program the program to keep, may be null
+     */
+    public synchronized void pin(Program program) {
+        if ( program != null ) {
+            this.pins.merge(program.getPath().getParent(), 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Releases a program pinned by {@link #pin(Program)}, it is removed by the next eviction if the cache is too large.
+     *
+     * @param program the program to release, may be null
+     */
+    public synchronized void unpin(Program program) {
+        if ( program != null ) {
+            this.pins.computeIfPresent(program.getPath().getParent(), (programDirectory, count) -> (count > 1) ? (count - 1) : null);
+        }
+    }
+
+    /**
+     * Reads the content into the cache. The content is written to disk while it is read and hashed on the way, it is never held in memory completely.
+     *
+     * @param content the content of the program, it is read until the end but not closed
+     * @param fileName the name of the file as sent by the server, may be null
+     * @param etag the ETag sent by the server, may be null
+     * @return the cached program
+     * @throws IOException if the content could not be read or written
+     */
+    public Program store(InputStream content, String fileName, String etag) throws IOException {
+        return this.store(content, fileName, etag, null).getFirst();
+    }
+
+    /**
+     * Reads the content into the cache while the reader consumes it. Every byte the reader reads is written to disk on the way, whatever the reader
+     * leaves is read afterwards. This way the program can be passed on while it is still arriving and is cached nevertheless.
+     *
+     * @param content the content of the program, it is read until the end but not closed
+     * @param fileName the name of the file as sent by the server, may be null
+     * @param etag the ETag sent by the server, may be null
+     * @param reader consumes the content first, may be null
+     * @param <T> the type of the result of the reader
+     * @return the cached program and the result of the reader
+     * @throws IOException if the content could not be read or written, or the reader failed
+     */
+    public <T> Pair<Program, T> store(InputStream content, String fileName, String etag, ContentReader<? extends T> reader) throws IOException {
+        Files.createDirectories(this.directory);
+        Path download = Files.createTempFile(this.directory, "download", ".tmp");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            T result = null;
+            try (OutputStream os = Files.newOutputStream(download)) {
+                InputStream hashedContent = new DigestInputStream(content, digest);
+                if ( reader != null ) {
+                    result = reader.read(new TeeInputStream(new CloseShieldInputStream(hashedContent), os));
+                }
+                IOUtils.copy(hashedContent, os);
+            }
+            return new Pair<>(this.add(download, Hex.encodeHexString(digest.digest()), fileName, etag), result);
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new IOException(e);
+        } finally {
+            Files.deleteIfExists(download);
+        }
+    }
+
+    /**
+     * Moves a complete download into the cache, only one download is added at a time.
+     */
+    private synchronized Program add(Path download, String hash, String fileName, String etag) throws IOException {
+        Path programDirectory = this.directory.resolve(hash);
+        Path path = programDirectory.resolve(toSafeFileName(fileName));
+        if ( Files.exists(path) ) {
+            LOG.info("Program {} is already cached", hash);
+        } else {
+            Files.createDirectories(programDirectory);
+            Files.move(download, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        touch(programDirectory);
+
+        Program program = new Program(hash, path, etag);
+        if ( etag != null ) {
+            this.programsByEtag.put(etag, program);
+        }
+        evict(programDirectory);
+        return program;
+    }
+
+    /**
+     * Removes the least recently used programs until the cache fits its size, the added program and the pinned ones are kept. Runs within {@link #add}.
+     */
+    private void evict(Path keep) {
+        List<Path> programDirectories = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, Files::isDirectory)) {
+            for ( Path programDirectory : stream ) {
+                programDirectories.add(programDirectory);
+            }
+        } catch ( IOException e ) {
+            LOG.warn("Could not list the program cache: {}", e.getMessage());
+            return;
+        }
+        programDirectories.sort(Comparator.comparingLong(ProgramCache::lastModified).reversed());
+
+        long size = 0;
+        for ( Path programDirectory : programDirectories ) {
+            size += FileUtils.sizeOfDirectory(programDirectory.toFile());
+            if ( (size > this.maxSize) && !programDirectory.equals(keep) && !this.pins.containsKey(programDirectory) ) {
+                LOG.info("Removing {} from the program cache", programDirectory.getFileName());
+                FileUtils.deleteQuietly(programDirectory.toFile());
+                this.programsByEtag.values().removeIf(program -> program.getPath().startsWith(programDirectory));
+            }
+        }
+    }
+
+    private static String toSafeFileName(String fileName) {
+        if ( (fileName == null) || fileName.isEmpty() ) {
+            return DEFAULT_FILENAME;
+        }
+        String safeFileName = fileName.replaceAll("[^\\w.-]", "_");
+        return safeFileName.startsWith(".") ? DEFAULT_FILENAME + safeFileName : safeFileName;
+    }
+
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch ( IOException e ) {
+            LOG.warn("Could not update the access time of {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch ( IOException e ) {
+            return 0L;
+        }
+    }
+
+    /**
+     * Consumes the content of a program while it is stored, see {@link #store(InputStream, String, String, ContentReader)}.
+     *
+     * @param <T> the type of the result of the reader
+     */
+    @FunctionalInterface
+    public interface ContentReader<T> {
+        /**
+         * Reads the content, it is not necessary to read it until the end. The stream must not be used after the call.
+         *
+         * @param content the content of the program
+         * @return the result of the reader
+         * @throws IOException if the content could not be read or handled
+         */
+        T read(InputStream content) throws IOException;
+    }
+
+    /**
+     * A program in the cache. Two programs are equal if their content is equal.
+     */
+    public static final class Program {
+        private final String hash;
+        private final Path path;
+        private final String etag;
+
+        Program(String hash, Path path, String etag) {
+            this.hash = hash;
+            this.path = path;
+            this.etag = etag;
+        }
+
+        public String getHash() {
+            return this.hash;
+        }
+
+        public Path getPath() {
+            return this.path;
+        }
+
+        public String getEtag() {
+            return this.etag;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if ( this == obj ) {
+                return true;
+            }
+            if ( (obj == null) || (this.getClass() != obj.getClass()) ) {
+                return false;
+            }
+            return this.hash.equals(((Program) obj).hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.hash);
+        }
+
+        @Override
+        public String toString() {
+            return this.path.getFileName() + " (" + this.hash + ')';
+        }
+    }
+}
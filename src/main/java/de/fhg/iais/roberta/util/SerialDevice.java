@@ -8,12 +8,34 @@ public class SerialDevice {
     public final String productId;
     public final String port; // optional port, ignored for equality
     public final String name; // just as a description, ignored for equality
+    public final int packedId; // vendor id << 16 | product id, -1 if one of the ids is not hexadecimal
 
     public SerialDevice(String vendorId, String productId, String port, String name) {
         this.vendorId = vendorId;
         this.productId = productId;
         this.port = port;
         this.name = name;
+        this.packedId = packIds(vendorId, productId);
+    }
+
+    /**
+     * Packs the USB vendor and product id into one int, so devices can be looked up without comparing strings.
+     *
+     * @param vendorId the hexadecimal vendor id
+     * @param productId the hexadecimal product id
+     * @return the packed id, -1 if one of the ids is not a 16 bit hexadecimal number
+     */
+    public static int packIds(String vendorId, String productId) {
+        try {
+            int vendor = Integer.parseInt(vendorId.trim(), 16);
+            int product = Integer.parseInt(productId.trim(), 16);
+            if ( (vendor < 0) || (vendor > 0xFFFF) || (product < 0) || (product > 0xFFFF) ) {
+                return -1;
+            }
+            return (vendor << 16) | product;
+        } catch ( NumberFormatException e ) {
+            return -1;
+        }
     }
 
     @Override public boolean equals(Object obj) {
@@ -24,10 +46,16 @@ public class SerialDevice {
             return false;
         }
         SerialDevice serialDevice = (SerialDevice) obj;
+        if ( (this.packedId != -1) || (serialDevice.packedId != -1) ) {
+            return this.packedId == serialDevice.packedId;
+        }
         return this.vendorId.equalsIgnoreCase(serialDevice.vendorId) && this.productId.equalsIgnoreCase(serialDevice.productId);
     }
 
     @Override public int hashCode() {
+        if ( this.packedId != -1 ) {
+            return this.packedId;
+        }
         return Objects.hash(this.vendorId.toLowerCase(Locale.ENGLISH), this.productId.toLowerCase(Locale.ENGLISH));
     }
 }
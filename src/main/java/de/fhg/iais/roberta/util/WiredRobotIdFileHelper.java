@@ -30,9 +30,32 @@ public final class WiredRobotIdFileHelper {
         WIRED_ROBOT_ID_FILEPATH =
         SystemUtils.getUserHome().getPath() + File.separator + "OpenRobertaConnector" + File.separator + WIRED_ROBOT_ID_FILENAME;
 
+    private static WiredRobotIdTable table = null; // guarded by the class
+    private static long tableLastModified = -1L; // guarded by the class
+
     private WiredRobotIdFileHelper() {
     }
 
+    /**
+     * Returns the index of the supported wired robots. The file is only read again if it was modified since the last call or saved by the
+     * connector, otherwise the cached table is returned.
+     *
+     * @return the current table of the supported wired robots
+     */
+    public static synchronized WiredRobotIdTable getTable() {
+        long lastModified = new File(WIRED_ROBOT_ID_FILEPATH).lastModified(); // 0 if the file does not exist
+        if ( (table == null) || (lastModified != tableLastModified) ) {
+            Pair<Map<SerialDevice, WiredRobotType>, Map<Integer, String>> loadIdsResult = load();
+            table = new WiredRobotIdTable(loadIdsResult.getFirst(), loadIdsResult.getSecond());
+            tableLastModified = lastModified;
+        }
+        return table;
+    }
+
+    private static synchronized void invalidateTable() {
+        table = null;
+    }
+
     public static Pair<Map<SerialDevice, WiredRobotType>, Map<Integer, String>> load() {
         Map<SerialDevice, WiredRobotType> supportedRobots = new HashMap<>(20);
         Map<Integer, String> readIdFileErrors = new HashMap<>(20);
@@ -101,6 +124,8 @@ public final class WiredRobotIdFileHelper {
             LOG.error("Could not find file {}: {}", WIRED_ROBOT_ID_FILENAME, e.getMessage());
         } catch ( IOException e ) {
             LOG.error("Something went wrong while writing the {} file: {}", WIRED_ROBOT_ID_FILENAME, e.getMessage());
+        } finally {
+            invalidateTable();
         }
     }
 
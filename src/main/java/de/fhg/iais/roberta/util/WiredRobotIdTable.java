@@ -0,0 +1,61 @@
+package de.fhg.iais.roberta.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import de.fhg.iais.roberta.connection.wired.WiredRobotType;
+
+/**
+ * Immutable index of the supported wired robots by the packed USB ids of {@link SerialDevice#packedId}. The ids are kept in a sorted int array, a
+ * lookup is a binary search without any string handling.
+ */
+public final class WiredRobotIdTable {
+    private final int[] packedIds;
+    private final WiredRobotType[] types;
+    private final Map<Integer, String> errors;
+
+    WiredRobotIdTable(Map<SerialDevice, WiredRobotType> supportedRobots, Map<Integer, String> errors) {
+        Map<Integer, WiredRobotType> sorted = new TreeMap<>();
+        for ( Entry<SerialDevice, WiredRobotType> entry : supportedRobots.entrySet() ) {
+            if ( entry.getKey().packedId != -1 ) {
+                sorted.put(entry.getKey().packedId, entry.getValue());
+            }
+        }
+        this.packedIds = new int[sorted.size()];
+        this.types = new WiredRobotType[sorted.size()];
+        int i = 0;
+        for ( Entry<Integer, WiredRobotType> entry : sorted.entrySet() ) {
+            this.packedIds[i] = entry.getKey();
+            this.types[i] = entry.getValue();
+            i++;
+        }
+        this.errors = Collections.unmodifiableMap(new HashMap<>(errors));
+    }
+
+    /**
+     * Returns the robot type of the device.
+     *
+     * @param device the USB device
+     * @return the robot type, null if the device is not a supported robot
+     */
+    public WiredRobotType get(SerialDevice device) {
+        if ( device.packedId == -1 ) {
+            return null;
+        }
+        int index = Arrays.binarySearch(this.packedIds, device.packedId);
+        return (index < 0) ? null : this.types[index];
+    }
+
+    /**
+     * Returns the errors found while reading the id file.
+     *
+     * @return an unmodifiable map of line numbers to error keys
+     */
+    public Map<Integer, String> getErrors() {
+        return this.errors;
+    }
+}
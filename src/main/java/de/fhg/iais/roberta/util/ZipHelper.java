@@ -3,6 +3,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.zip.ZipEntry;
@@ -74,4 +76,38 @@ public final class ZipHelper {
             zis.closeEntry();
         }
     }
+
+    /**
+     * Unzips the stream into the given directory while it is read, directories are created as needed. Entries that would be written outside of the
+     * directory are rejected. The stream is not closed, it is read up to the end of the last entry.
+     *
+     * @param input the zipped content
+     * @param outputDir the destination directory for the files
+     * @throws IOException when something goes wrong
+     */
+    public static void unzip(InputStream input, Path outputDir) throws IOException {
+        Path root = outputDir.toAbsolutePath().normalize();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ZipInputStream zis = new ZipInputStream(input);
+        ZipEntry zipEntry = zis.getNextEntry();
+        while ( zipEntry != null ) {
+            Path newPath = root.resolve(zipEntry.getName()).normalize();
+            if ( !newPath.startsWith(root) ) {
+                throw new IOException("Zip entry " + zipEntry.getName() + " is outside of the destination directory!");
+            }
+            if ( zipEntry.isDirectory() ) {
+                Files.createDirectories(newPath);
+            } else {
+                Files.createDirectories(newPath.getParent());
+                try (OutputStream os = Files.newOutputStream(newPath)) {
+                    int len;
+                    while ( (len = zis.read(buffer)) > 0 ) {
+                        os.write(buffer, 0, len);
+                    }
+                }
+            }
+            zis.closeEntry();
+            zipEntry = zis.getNextEntry();
+        }
+    }
 }
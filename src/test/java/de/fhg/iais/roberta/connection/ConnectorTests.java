@@ -0,0 +1,208 @@
+package de.fhg.iais.roberta.connection;
+
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.fhg.iais.roberta.connection.IConnector.State;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConnectorTests {
+
+    private static final long TIMEOUT = 250L;
+
+    private ScheduledExecutorService executorService = null;
+
+    @BeforeEach
+    void setUp() {
+        this.executorService = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @Test
+    void run_ShouldWaitWithoutRepeatingStates_WhenNothingHappens() throws Exception {
+        AutoConnector connector = new AutoConnector(new TestRobot());
+        List<State> states = new CopyOnWriteArrayList<>();
+        connector.registerListener(event -> states.add(event.getState()));
+
+        Future<?> future = this.executorService.submit(connector::run);
+        Thread.sleep(TIMEOUT);
+
+        assertThat(states, contains(State.WAIT_FOR_CONNECT_BUTTON_PRESS, State.WAIT_FOR_CMD));
+        assertThat(future.isDone(), is(false));
+
+        connector.close();
+        future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertThat(future.isDone(), is(true));
+    }
+
+    @Test
+    void runAsync_ShouldComplete_WhenClosed() throws Exception {
+        AutoConnector connector = new AutoConnector(new TestRobot());
+        List<State> states = new CopyOnWriteArrayList<>();
+        connector.registerListener(event -> states.add(event.getState()));
+
+        CompletableFuture<Void> finished = connector.runAsync(this.executorService, this.executorService);
+        Thread.sleep(TIMEOUT);
+
+        assertThat(states, contains(State.WAIT_FOR_CONNECT_BUTTON_PRESS, State.WAIT_FOR_CMD));
+        assertThat(finished.isDone(), is(false));
+
+        connector.close();
+        finished.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertThat(finished.isDone(), is(true));
+    }
+
+    @Test
+    void runAsync_ShouldNotSpin_WhenThereIsNothingToPush() throws Exception {
+        AtomicInteger pushAttempts = new AtomicInteger();
+        AbstractConnector<IRobot> connector = new AbstractConnector<IRobot>(new TestRobot()) {
+            @Override
+            protected void runLoopBody() {
+                this.fire(State.WAIT_FOR_CMD);
+            }
+
+            @Override
+            protected byte[] createPushRequest() {
+                pushAttempts.incrementAndGet();
+                return null;
+            }
+        };
+
+        CompletableFuture<Void> finished = connector.runAsync(this.executorService, this.executorService);
+        Thread.sleep(TIMEOUT);
+
+        assertThat(pushAttempts.get(), is(1));
+
+        connector.close();
+        finished.get(TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void runAsync_ShouldFinish_WhenHandlingThePushResponseFails() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/rest/pushcmd", exchange -> {
+            exchange.getRequestBody().close();
+            byte[] response = new JSONObject().put(IConnector.KEY_CMD, IConnector.CMD_DOWNLOAD).toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(response);
+            }
+        });
+        server.start();
+        try {
+            AbstractConnector<IRobot> connector = new AbstractConnector<IRobot>(new TestRobot()) {
+                @Override
+                protected void runLoopBody() {
+                    this.fire(State.WAIT_FOR_CMD);
+                }
+
+                @Override
+                protected byte[] createPushRequest() {
+                    return "{}".getBytes(StandardCharsets.UTF_8);
+                }
+
+                @Override
+                protected void handlePushResponse(JSONObject response) {
+                    throw new IllegalStateException("broken");
+                }
+            };
+            connector.updateCustomServerAddress("localhost:" + server.getAddress().getPort());
+
+            CompletableFuture<Void> finished = connector.runAsync(this.executorService, this.executorService);
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> finished.get(10000L, TimeUnit.MILLISECONDS));
+            assertThat(e.getCause().getMessage(), is("broken"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void encode_ShouldReuseRequest_WhenCommandIsRepeated() {
+        JSONObject deviceInfo = new JSONObject();
+        deviceInfo.put("robot", "test");
+        PushRequestEncoder encoder = new PushRequestEncoder(deviceInfo, "TOKEN");
+        deviceInfo.put("robot", "changed");
+
+        byte[] push = encoder.encode(IConnector.CMD_PUSH);
+        JSONObject request = new JSONObject(new String(push, StandardCharsets.UTF_8));
+
+        assertThat(encoder.encode(IConnector.CMD_PUSH), sameInstance(push));
+        assertThat(request.getString("robot"), is("test"));
+        assertThat(request.getString(IConnector.KEY_TOKEN), is("TOKEN"));
+        assertThat(request.getString(IConnector.KEY_CMD), is(IConnector.CMD_PUSH));
+        assertThat(encoder.toJson(IConnector.CMD_REGISTER).getString(IConnector.KEY_CMD), is(IConnector.CMD_REGISTER));
+    }
+
+    @Test
+    void fire_ShouldKeepDetailsPerEvent_WhenConnectorsFireTheSameState() {
+        AutoConnector first = new AutoConnector(new TestRobot());
+        AutoConnector second = new AutoConnector(new TestRobot());
+        List<StateEvent> events = new CopyOnWriteArrayList<>();
+        first.registerListener(events::add);
+        second.registerListener(events::add);
+
+        first.fire(State.ERROR_UPLOAD_TO_ROBOT, "first");
+        first.fire(State.ERROR_UPLOAD_TO_ROBOT, "first");
+        second.fire(State.ERROR_UPLOAD_TO_ROBOT, "second");
+        first.fire(State.DISCOVER);
+
+        assertThat(events, hasSize(3));
+        assertThat(events.get(0).getConnector(), sameInstance(first));
+        assertThat(events.get(0).getDetails(), contains("first"));
+        assertThat(events.get(1).getConnector(), sameInstance(second));
+        assertThat(events.get(1).getDetails(), contains("second"));
+        assertThat(events.get(2).getPreviousState(), is(State.ERROR_UPLOAD_TO_ROBOT));
+        assertThat(events.get(2).getDetails(), is(empty()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.executorService.shutdownNow();
+    }
+
+    private static class TestRobot implements IRobot {
+        @Override
+        public String getPrettyName() {
+            return "Test";
+        }
+
+        @Override
+        public String getName() {
+            return "test";
+        }
+
+        @Override
+        public ConnectionType getConnectionType() {
+            return ConnectionType.WIRED;
+        }
+
+        @Override
+        public IConnector<? extends IRobot> createConnector() {
+            return new AutoConnector(this);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package de.fhg.iais.roberta.connection;
+
+import org.apache.commons.io.IOUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+class PushMultiplexerTests {
+
+    private static final long TIMEOUT = 5000L;
+    private static final long GATHER_DELAY = 100L;
+
+    private final List<JSONArray> exchanges = new CopyOnWriteArrayList<>();
+
+    private HttpServer server = null;
+    private ScheduledExecutorService scheduler = null;
+    private boolean answerFirstOnly = false;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/rest/pushcmd/multi", this::handleMultiPush);
+        this.server.start();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @Test
+    void push_ShouldSendOneExchange_WhenSeveralRobotsPush() throws Exception {
+        PushMultiplexer multiplexer = this.createMultiplexer();
+
+        CompletableFuture<JSONObject> first = multiplexer.push("AAAA", createPushRequest("AAAA"));
+        CompletableFuture<JSONObject> second = multiplexer.push("BBBB", createPushRequest("BBBB"));
+
+        assertThat(first.get(TIMEOUT, TimeUnit.MILLISECONDS).getString(IConnector.KEY_CMD), is("repeat:AAAA"));
+        assertThat(second.get(TIMEOUT, TimeUnit.MILLISECONDS).getString(IConnector.KEY_CMD), is("repeat:BBBB"));
+        assertThat(this.exchanges, hasSize(1));
+        assertThat(this.exchanges.get(0).length(), is(2));
+    }
+
+    @Test
+    void push_ShouldSendAgain_WhenServerDidNotAnswerRequest() throws Exception {
+        this.answerFirstOnly = true;
+        PushMultiplexer multiplexer = this.createMultiplexer();
+
+        CompletableFuture<JSONObject> first = multiplexer.push("AAAA", createPushRequest("AAAA"));
+        CompletableFuture<JSONObject> second = multiplexer.push("BBBB", createPushRequest("BBBB"));
+
+        assertThat(first.get(TIMEOUT, TimeUnit.MILLISECONDS).getString(IConnector.KEY_CMD), is("repeat:AAAA"));
+        assertThat(second.get(TIMEOUT, TimeUnit.MILLISECONDS).getString(IConnector.KEY_CMD), is("repeat:BBBB"));
+        assertThat(this.exchanges, hasSize(2));
+        assertThat(this.exchanges.get(1).getJSONObject(0).getString(IConnector.KEY_TOKEN), is("BBBB"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.server.stop(0);
+        this.scheduler.shutdownNow();
+    }
+
+    private PushMultiplexer createMultiplexer() {
+        ServerCommunicator serverCommunicator = new ServerCommunicator("localhost:" + this.server.getAddress().getPort());
+        return new PushMultiplexer(serverCommunicator, this.scheduler, GATHER_DELAY);
+    }
+
+    private void handleMultiPush(HttpExchange exchange) throws IOException {
+        JSONArray requests = new JSONObject(IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8)).getJSONArray(PushMultiplexer.KEY_REQUESTS);
+        this.exchanges.add(requests);
+
+        JSONArray responses = new JSONArray();
+        int answered = this.answerFirstOnly ? 1 : requests.length();
+        for ( int i = 0; i < answered; i++ ) {
+            String token = requests.getJSONObject(i).getString(IConnector.KEY_TOKEN);
+            responses.put(new JSONObject().put(IConnector.KEY_TOKEN, token).put(IConnector.KEY_CMD, IConnector.CMD_REPEAT + ':' + token));
+        }
+        byte[] body = new JSONObject().put(PushMultiplexer.KEY_RESPONSES, responses).toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private static byte[] createPushRequest(String token) {
+        JSONObject deviceInfo = new JSONObject();
+        deviceInfo.put("robot", "test");
+        return new PushRequestEncoder(deviceInfo, token).encode(IConnector.CMD_PUSH);
+    }
+}
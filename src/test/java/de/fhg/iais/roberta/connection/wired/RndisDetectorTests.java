@@ -0,0 +1,22 @@
+package de.fhg.iais.roberta.connection.wired;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class RndisDetectorTests {
+
+    @Test
+    void isOnSubnet_ShouldCompareOnlyPrefix_WhenAddressesDiffer() throws UnknownHostException {
+        InetAddress brick = InetAddress.getByName("10.0.1.1");
+
+        assertThat(RndisDetector.isOnSubnet(InetAddress.getByName("10.0.1.12"), 24, brick), is(true));
+        assertThat(RndisDetector.isOnSubnet(InetAddress.getByName("10.0.0.12"), 24, brick), is(false));
+        assertThat(RndisDetector.isOnSubnet(InetAddress.getByName("10.0.0.12"), 23, brick), is(true));
+        assertThat(RndisDetector.isOnSubnet(InetAddress.getByName("192.168.1.1"), 0, brick), is(false));
+    }
+}
@@ -0,0 +1,42 @@
+package de.fhg.iais.roberta.connection.wired;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.fhg.iais.roberta.connection.wired.SerialRobotDetector.PortInfo;
+import de.fhg.iais.roberta.util.SerialDevice;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+class SerialRobotDetectorTests {
+
+    @Test
+    void toUsbDevices_ShouldKeepTtyNames_WhenCallOutDevicesAreListedOnMacOs() {
+        List<SerialDevice> devices = SerialRobotDetector.toUsbDevices(Arrays.asList(
+            new PortInfo("cu.Bluetooth-Incoming-Port", -1, -1, "Bluetooth"),
+            new PortInfo("cu.usbmodem14101", 0x2341, 0x43, "Arduino Uno"),
+            new PortInfo("tty.usbmodem14101", 0x2341, 0x43, "Arduino Uno")), true);
+
+        assertThat(devices, hasSize(1));
+        assertThat(devices.get(0).port, is("tty.usbmodem14101"));
+        assertThat(devices.get(0).vendorId, is("2341"));
+        assertThat(devices.get(0).productId, is("0043"));
+        assertThat(devices.get(0).name, is("Arduino Uno"));
+    }
+
+    @Test
+    void toUsbDevices_ShouldSkipPortsWithoutUsbIds_WhenListedOnOtherSystems() {
+        List<SerialDevice> devices = SerialRobotDetector.toUsbDevices(Arrays.asList(
+            new PortInfo("ttyS0", -1, -1, "Physical Port S0"),
+            new PortInfo("ttyACM0", 0x0D28, 0x0204, "BBC micro:bit"),
+            new PortInfo("ttyUSB0", 0x1A86, 0, "USB Serial")), false);
+
+        assertThat(devices, hasSize(1));
+        assertThat(devices.get(0).port, is("ttyACM0"));
+        assertThat(devices.get(0).packedId, is(0x0D280204));
+    }
+}
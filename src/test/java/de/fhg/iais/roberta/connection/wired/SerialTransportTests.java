@@ -0,0 +1,123 @@
+package de.fhg.iais.roberta.connection.wired;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class SerialTransportTests {
+
+    @Test
+    void serialEvent_ShouldReportDisconnect_WhenNoBytesAreAvailable() {
+        FakeTransport transport = new FakeTransport();
+        TestReceiver receiver = new TestReceiver();
+        transport.setReceiver(receiver);
+        transport.add("abc");
+        transport.add("def");
+        transport.disconnect();
+
+        transport.serialEvent(SerialPort.LISTENING_EVENT_DATA_AVAILABLE);
+
+        assertThat(receiver.getReceived(), is("abcdef"));
+        assertThat(receiver.disconnects, is(1));
+        assertThat(transport.closes, is(1));
+    }
+
+    @Test
+    void serialEvent_ShouldDiscardBytes_WhenThereIsNoReceiver() {
+        FakeTransport transport = new FakeTransport();
+        transport.add("output of the program");
+
+        transport.serialEvent(SerialPort.LISTENING_EVENT_DATA_AVAILABLE);
+        assertThat(transport.chunks.isEmpty(), is(true));
+
+        TestReceiver receiver = new TestReceiver();
+        transport.setReceiver(receiver);
+        transport.add("answer");
+        transport.serialEvent(SerialPort.LISTENING_EVENT_DATA_AVAILABLE);
+
+        assertThat(receiver.getReceived(), is("answer"));
+        assertThat(receiver.disconnects, is(0));
+        assertThat(transport.closes, is(0));
+    }
+
+    @Test
+    void serialEvent_ShouldReportDisconnect_WhenPortWasDisconnected() {
+        FakeTransport transport = new FakeTransport();
+        TestReceiver receiver = new TestReceiver();
+        transport.setReceiver(receiver);
+
+        transport.serialEvent(SerialPort.LISTENING_EVENT_PORT_DISCONNECTED);
+
+        assertThat(receiver.disconnects, is(1));
+        assertThat(transport.closes, is(1));
+    }
+
+    /**
+     * Reads the added chunks instead of a serial port, after disconnect() the port is not usable anymore once the chunks are read.
+     */
+    private static final class FakeTransport extends SerialTransport {
+        private final Deque<byte[]> chunks = new ArrayDeque<>();
+        private boolean disconnected = false;
+        private int closes = 0;
+
+        FakeTransport() {
+            super("ttyUSB0", 9600);
+        }
+
+        @Override
+        public synchronized void close() {
+            this.closes++;
+            super.close();
+        }
+
+        void add(String chunk) {
+            this.chunks.add(chunk.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void disconnect() {
+            this.disconnected = true;
+        }
+
+        @Override
+        int bytesAvailable() {
+            if ( this.chunks.isEmpty() ) {
+                return this.disconnected ? -1 : 0;
+            }
+            return this.chunks.peek().length;
+        }
+
+        @Override
+        int readBytes(byte[] data, int length) {
+            byte[] chunk = this.chunks.poll();
+            System.arraycopy(chunk, 0, data, 0, length);
+            return length;
+        }
+    }
+
+    private static final class TestReceiver implements SerialTransport.Receiver {
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        private int disconnects = 0;
+
+        @Override
+        public void receive(byte[] data, int length) {
+            this.received.write(data, 0, length);
+        }
+
+        @Override
+        public void disconnected() {
+            this.disconnects++;
+        }
+
+        String getReceived() {
+            return new String(this.received.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
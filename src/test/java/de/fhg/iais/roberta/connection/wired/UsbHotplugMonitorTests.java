@@ -0,0 +1,50 @@
+package de.fhg.iais.roberta.connection.wired;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+
+import de.fhg.iais.roberta.util.SerialDevice;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class UsbHotplugMonitorTests {
+
+    @Test
+    void lookup_ShouldFindUsbDevice_WhenTtyBelongsToUsbDevice(@TempDir Path sys) throws IOException {
+        assumeTrue(SystemUtils.IS_OS_LINUX);
+        Path usbDevice = Files.createDirectories(sys.resolve("devices/pci0000:00/usb1/1-1"));
+        Files.write(usbDevice.resolve("idVendor"), Collections.singletonList("2341"), StandardCharsets.UTF_8);
+        Files.write(usbDevice.resolve("idProduct"), Collections.singletonList("0043"), StandardCharsets.UTF_8);
+        Path usbInterface = Files.createDirectories(usbDevice.resolve("1-1:1.0"));
+        createTty(sys, "ttyACM0", usbInterface);
+        createTty(sys, "ttyS0", Files.createDirectories(sys.resolve("devices/platform/serial8250")));
+
+        SerialDevice device = UsbHotplugMonitor.lookup(sys, "ttyACM0");
+
+        assertThat(device.vendorId, is("2341"));
+        assertThat(device.productId, is("0043"));
+        assertThat(device.port, is("ttyACM0"));
+        assertThat(UsbHotplugMonitor.lookup(sys, "ttyS0"), nullValue());
+        assertThat(UsbHotplugMonitor.lookup(sys, "ttyUSB0"), nullValue());
+
+        Map<String, SerialDevice> devices = UsbHotplugMonitor.scan(sys);
+        assertThat(devices.size(), is(1));
+        assertThat(devices.get("ttyACM0").port, is("ttyACM0"));
+    }
+
+    private static void createTty(Path sys, String name, Path device) throws IOException {
+        Path tty = Files.createDirectories(sys.resolve("class/tty").resolve(name));
+        Files.createSymbolicLink(tty.resolve("device"), device);
+    }
+}
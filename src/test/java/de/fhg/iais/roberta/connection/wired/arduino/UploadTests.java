@@ -0,0 +1,269 @@
+package de.fhg.iais.roberta.connection.wired.arduino;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import de.fhg.iais.roberta.connection.wired.WiredRobotType;
+import de.fhg.iais.roberta.util.Pair;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class UploadTests {
+
+    private static final long TIMEOUT = 2000L;
+    private static final long SETTLE_TIME = 100L;
+
+    private ExecutorService executorService = null;
+
+    @BeforeEach
+    void setUp() {
+        this.executorService = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.executorService.shutdownNow();
+    }
+
+    @Test
+    void accept_ShouldCountHashes_WhenAvrdudeWrites() {
+        UploadProgressParser parser = new UploadProgressParser();
+
+        int progress = accept(parser, "avrdude: writing flash (924 bytes):\n\nWriting | #########################");
+        assertThat(progress, is(50));
+
+        progress = accept(parser, "######################### | 100% 0.16s\n\nReading | ####");
+        assertThat(progress, is(100));
+    }
+
+    @Test
+    void accept_ShouldReadPercentage_WhenEsptoolWrites() {
+        UploadProgressParser parser = new UploadProgressParser();
+
+        int progress = accept(parser, "Compressed 8192 bytes to 47...\nWriting at 0x0000e000... (37 %)\r");
+        assertThat(progress, is(37));
+
+        progress = accept(parser, "Writing at 0x00010000... (12 %)\r");
+        assertThat(progress, is(37));
+    }
+
+    @Test
+    void getLines_ShouldSkipProgressLines_WhenAvrdudeFails() {
+        UploadErrorOutput output = new UploadErrorOutput();
+        String avrdude = "avrdude: writing flash (924 bytes):\n\nWriting | ##################################################"
+            + " | 100% 0.16s\n\nReading | ####\r\navrdude: verification error, first mismatch at byte 0x0000\n";
+        for ( char c : avrdude.toCharArray() ) {
+            output.accept(c);
+        }
+
+        assertThat(output.getLines(), is("avrdude: writing flash (924 bytes):\navrdude: verification error, first mismatch at byte 0x0000"));
+    }
+
+    @Test
+    void submit_ShouldLimitRunningProcesses_WhenPortsDiffer() throws Exception {
+        UploadScheduler scheduler = new UploadScheduler(2, this.executorService);
+        AtomicInteger started = new AtomicInteger();
+        List<FakeProcess> processes = new ArrayList<>();
+        List<UploadJob> jobs = new ArrayList<>();
+        for ( int i = 0; i < 3; i++ ) {
+            FakeProcess process = new FakeProcess(started);
+            processes.add(process);
+            jobs.add(scheduler.submit(new UploadJob("ttyACM" + i, process::start)));
+        }
+
+        assertThat(await(() -> started.get() == 2), is(true));
+        Thread.sleep(SETTLE_TIME);
+        assertThat(started.get(), is(2));
+
+        processes.stream().filter(FakeProcess::isStarted).findFirst().get().finish(0);
+        assertThat(await(() -> started.get() == 3), is(true));
+        processes.forEach(process -> process.finish(0));
+        for ( UploadJob job : jobs ) {
+            assertThat(job.getResult().get(TIMEOUT, TimeUnit.MILLISECONDS).getFirst(), is(0));
+        }
+    }
+
+    @Test
+    void submit_ShouldRunUploadsOneAfterAnother_WhenPortIsTheSame() throws Exception {
+        UploadScheduler scheduler = new UploadScheduler(4, this.executorService);
+        AtomicInteger started = new AtomicInteger();
+        FakeProcess first = new FakeProcess(started);
+        FakeProcess second = new FakeProcess(started);
+
+        UploadJob firstJob = scheduler.submit(new UploadJob("ttyACM0", first::start));
+        UploadJob secondJob = scheduler.submit(new UploadJob("ttyACM0", second::start));
+
+        assertThat(await(first::isStarted), is(true));
+        Thread.sleep(SETTLE_TIME);
+        assertThat(second.isStarted(), is(false));
+
+        first.finish(1);
+        assertThat(firstJob.getResult().get(TIMEOUT, TimeUnit.MILLISECONDS).getFirst(), is(1));
+        assertThat(await(second::isStarted), is(true));
+        second.finish(0);
+        assertThat(secondJob.getResult().get(TIMEOUT, TimeUnit.MILLISECONDS).getFirst(), is(0));
+    }
+
+    @Test
+    void cancel_ShouldNotStartProcess_WhenUploadIsQueued() throws Exception {
+        UploadScheduler scheduler = new UploadScheduler(1, this.executorService);
+        AtomicInteger started = new AtomicInteger();
+        FakeProcess running = new FakeProcess(started);
+        FakeProcess queued = new FakeProcess(started);
+
+        UploadJob runningJob = scheduler.submit(new UploadJob("ttyACM0", running::start));
+        assertThat(await(running::isStarted), is(true)); // uploads to different ports race for the process
+        UploadJob queuedJob = scheduler.submit(new UploadJob("ttyACM1", queued::start));
+
+        queuedJob.cancel();
+        assertThat(queuedJob.getResult().get(TIMEOUT, TimeUnit.MILLISECONDS).getFirst(), is(1));
+        running.finish(0);
+        assertThat(runningJob.getResult().get(TIMEOUT, TimeUnit.MILLISECONDS).getFirst(), is(0));
+        Thread.sleep(SETTLE_TIME);
+        assertThat(queued.isStarted(), is(false));
+    }
+
+    @Test
+    void close_ShouldDestroyRunningProcess_WhenConnectorIsClosed() throws Exception {
+        Arduino arduino = new Arduino(WiredRobotType.UNO, "ttyACM0");
+        ArduinoCommunicator communicator = new ArduinoCommunicator(arduino);
+        ArduinoConnector connector = new ArduinoConnector(arduino, robot -> communicator);
+        connector.runLoopBody(); // creates the communicator
+
+        FakeProcess process = new FakeProcess(new AtomicInteger());
+        UploadJob job = new UploadScheduler(1, this.executorService).submit(new UploadJob("ttyACM0", process::start));
+        Future<Pair<Integer, String>> upload = this.executorService.submit(() -> communicator.awaitUpload(job));
+        assertThat(await(process::isStarted), is(true));
+
+        // the upload may not be awaited yet, close until it was cancelled
+        assertThat(await(() -> {
+            connector.close();
+            return upload.isDone();
+        }), is(true));
+        assertThat(upload.get().getFirst(), is(1));
+        assertThat(process.isDestroyed(), is(true));
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while ( !condition.getAsBoolean() ) {
+            if ( System.currentTimeMillis() > deadline ) {
+                return false;
+            }
+            Thread.sleep(10L);
+        }
+        return true;
+    }
+
+    private static int accept(UploadProgressParser parser, String output) {
+        int progress = 0;
+        for ( char c : output.toCharArray() ) {
+            progress = parser.accept(c);
+        }
+        return progress;
+    }
+
+    /**
+     * A flashing process that writes a line and runs until it is finished or destroyed.
+     */
+    private static final class FakeProcess extends Process {
+        private final AtomicInteger startedProcesses;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final InputStream output;
+        private volatile boolean started = false;
+        private volatile boolean destroyed = false;
+        private volatile int exitCode = 0;
+
+        FakeProcess(AtomicInteger startedProcesses) {
+            this.startedProcesses = startedProcesses;
+            ByteArrayInputStream line = new ByteArrayInputStream("avrdude: writing flash\n".getBytes(StandardCharsets.UTF_8));
+            this.output = new InputStream() {
+                @Override
+                public int read() throws InterruptedIOException {
+                    int c = line.read();
+                    if ( c == -1 ) {
+                        FakeProcess.this.awaitFinished();
+                    }
+                    return c;
+                }
+            };
+        }
+
+        Process start() {
+            this.started = true;
+            this.startedProcesses.incrementAndGet();
+            return this;
+        }
+
+        boolean isStarted() {
+            return this.started;
+        }
+
+        boolean isDestroyed() {
+            return this.destroyed;
+        }
+
+        void finish(int exitCode) {
+            this.exitCode = exitCode;
+            this.finished.countDown();
+        }
+
+        private void awaitFinished() throws InterruptedIOException {
+            try {
+                this.finished.await();
+            } catch ( InterruptedException e ) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return NullOutputStream.NULL_OUTPUT_STREAM;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return this.output;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            this.finished.await();
+            return this.exitCode;
+        }
+
+        @Override
+        public int exitValue() {
+            return this.exitCode;
+        }
+
+        @Override
+        public void destroy() {
+            this.destroyed = true;
+            this.finish(137);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package de.fhg.iais.roberta.connection.wired.mBot2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class AnswerReceiverTests {
+
+    private static final byte[] FRAME_WRITTEN = {(byte) 0xF3, (byte) 0xFA, 0x07, 0x00, 0x01, 0x00, 0x5E, (byte) 0xF0, 0x01, 0x00, 0x00, 0x50, (byte) 0xF4};
+    private static final byte[] FRAME_FAILED = {(byte) 0xF3, (byte) 0xFA, 0x07, 0x00, 0x01, 0x00, 0x5E, (byte) 0xF0, 0x01, 0x00, 0x01, 0x50, (byte) 0xF4};
+
+    @Test
+    void receive_ShouldCompleteAnswer_WhenFrameIsSplit() {
+        Mbot2Communicator.AnswerReceiver receiver = new Mbot2Communicator.AnswerReceiver();
+        CompletableFuture<Boolean> answer = receiver.expectAnswer();
+
+        receive(receiver, new byte[] {0x0A, (byte) 0xF4, 0x0D}); // output of the program before the answer
+        receive(receiver, Arrays.copyOfRange(FRAME_WRITTEN, 0, 5));
+        assertThat(answer.isDone(), is(false));
+
+        receive(receiver, Arrays.copyOfRange(FRAME_WRITTEN, 5, FRAME_WRITTEN.length));
+        assertThat(answer.join(), is(true));
+    }
+
+    @Test
+    void receive_ShouldCompleteAnswer_WhenFrameFollowsLongOutput() {
+        Mbot2Communicator.AnswerReceiver receiver = new Mbot2Communicator.AnswerReceiver();
+        CompletableFuture<Boolean> answer = receiver.expectAnswer();
+        byte[] output = new byte[100];
+        Arrays.fill(output, (byte) 'x');
+
+        receive(receiver, output);
+        receive(receiver, FRAME_WRITTEN);
+        assertThat(answer.join(), is(true));
+    }
+
+    @Test
+    void receive_ShouldReportFailure_WhenFrameWasNotWritten() {
+        Mbot2Communicator.AnswerReceiver receiver = new Mbot2Communicator.AnswerReceiver();
+        CompletableFuture<Boolean> answer = receiver.expectAnswer();
+
+        receive(receiver, FRAME_FAILED);
+        assertThat(answer.join(), is(false));
+
+        CompletableFuture<Boolean> nextAnswer = receiver.expectAnswer();
+        assertThat(nextAnswer.isDone(), is(false)); // the failed frame is not taken for the next answer
+    }
+
+    @Test
+    void disconnected_ShouldFailAnswer() {
+        Mbot2Communicator.AnswerReceiver receiver = new Mbot2Communicator.AnswerReceiver();
+        CompletableFuture<Boolean> answer = receiver.expectAnswer();
+        receive(receiver, Arrays.copyOfRange(FRAME_WRITTEN, 0, 5));
+
+        receiver.disconnected();
+        assertThat(answer.isCompletedExceptionally(), is(true));
+    }
+
+    private static void receive(Mbot2Communicator.AnswerReceiver receiver, byte[] data) {
+        byte[] buffer = Arrays.copyOf(data, 4096); // like the buffer of the transport
+        receiver.receive(buffer, data.length);
+    }
+}
@@ -0,0 +1,56 @@
+package de.fhg.iais.roberta.connection.wired.spike;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class SpikeFrameDecoderTests {
+
+    @Test
+    void accept_ShouldCompleteRequestsById_WhenAnswersAreSplitAndInterleaved() {
+        SpikeFrameDecoder decoder = new SpikeFrameDecoder();
+        CompletableFuture<JSONObject> first = decoder.expect("ab12");
+        CompletableFuture<JSONObject> second = decoder.expect("cd34");
+
+        accept(decoder, "{\"m\":0,\"p\":[[0,[]]]}\r{\"i\":\"cd34\",\"r\":{\"next_");
+        assertThat(second.isDone(), is(false));
+
+        accept(decoder, "ptr\":1024}}\r\n{\"i\":\"ab12\",\"r\":null}\r");
+        assertThat(second.join().getJSONObject("r").getInt("next_ptr"), is(1024));
+        assertThat(first.join().has("r"), is(true));
+    }
+
+    @Test
+    void accept_ShouldFailOldestRequest_WhenAnswerIsBroken() {
+        SpikeFrameDecoder decoder = new SpikeFrameDecoder();
+        CompletableFuture<JSONObject> first = decoder.expect("ab12");
+        CompletableFuture<JSONObject> second = decoder.expect("cd34");
+
+        accept(decoder, "{\"m\":0,\"p\":[[0,\r{\"i\":\"a\u0000\",\"r\":{\"transfer\r");
+        assertThat(first.isCompletedExceptionally(), is(true));
+        assertThat(second.isDone(), is(false));
+    }
+
+    @Test
+    void accept_ShouldKeepMessage_WhenItIsLongerThanTheBuffer() {
+        SpikeFrameDecoder decoder = new SpikeFrameDecoder();
+        CompletableFuture<JSONObject> answer = decoder.expect("ab12");
+        StringBuilder data = new StringBuilder();
+        for ( int i = 0; i < 10000; i++ ) {
+            data.append('x');
+        }
+
+        accept(decoder, "{\"i\":\"ab12\",\"r\":\"" + data + "\"}\r");
+        assertThat(answer.join().getString("r").length(), is(10000));
+    }
+
+    private static void accept(SpikeFrameDecoder decoder, String data) {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        decoder.accept(bytes, bytes.length);
+    }
+}
@@ -0,0 +1,42 @@
+package de.fhg.iais.roberta.connection.wired.spike;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+class SpikePayloadIteratorTests {
+
+    @Test
+    void next_ShouldEncodeEachPackage_WhenProgramIsRead() throws IOException {
+        byte[] program = new byte[1100];
+        for ( int i = 0; i < program.length; i++ ) {
+            program[i] = (byte) i;
+        }
+        SpikePayloadIterator payloads = new SpikePayloadIterator(new ByteArrayInputStream(program), 512, "7\"x");
+
+        ByteArrayInputStream decoded = new ByteArrayInputStream(program);
+        for ( int expectedLength : new int[] { 512, 512, 76 } ) {
+            String id = payloads.next();
+            byte[] payload = payloads.getPayload();
+            int length = payloads.getPayloadLength();
+            assertThat(payload[length - 1], is((byte) '\r'));
+
+            JSONObject json = new JSONObject(new String(payload, 0, length - 1, StandardCharsets.UTF_8));
+            assertThat(json.getString("m"), is("write_package"));
+            assertThat(json.getString("i"), is(id));
+            assertThat(json.getJSONObject("p").getString("transferid"), is("7\"x"));
+            byte[] expected = new byte[expectedLength];
+            decoded.read(expected, 0, expectedLength);
+            assertThat(Base64.getDecoder().decode(json.getJSONObject("p").getString("data")), is(expected));
+        }
+        assertThat(payloads.next(), is(nullValue()));
+    }
+}
@@ -0,0 +1,221 @@
+package de.fhg.iais.roberta.connection.wired.spike;
+
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import de.fhg.iais.roberta.connection.IConnector;
+import de.fhg.iais.roberta.connection.wired.SerialTransport;
+import de.fhg.iais.roberta.connection.wired.WiredRobotType;
+import de.fhg.iais.roberta.util.Pair;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class SpikeUploadTests {
+
+    private static final int PACKAGE_COUNT = 8;
+
+    private final ScheduledExecutorService hubThread = Executors.newSingleThreadScheduledExecutor();
+    private final Spike spike = new Spike(WiredRobotType.SPIKE, "ttyACM0");
+    private final byte[] program = new byte[PACKAGE_COUNT * 512];
+
+    @BeforeEach
+    void setUp() {
+        for ( int i = 0; i < this.program.length; i++ ) {
+            this.program[i] = (byte) ('a' + (i % 26));
+        }
+    }
+
+    @Test
+    void handleUpload_ShouldMatchAnswersById_WhenPackagesAreAnsweredOutOfOrder() {
+        FakeHub hub = new FakeHub();
+        hub.heldPackages = 4; // stop-and-wait would never get an answer
+        SpikeCommunicator communicator = new SpikeCommunicator(this.spike, hub);
+
+        Pair<Integer, String> result = communicator.handleUpload(new ByteArrayInputStream(this.program), this.program.length);
+
+        assertThat(result.getFirst(), is(0));
+        assertThat(hub.getUploadedProgram(), is(this.program));
+        assertThat(hub.countRequests("program_execute"), is(1));
+    }
+
+    @Test
+    void handleUpload_ShouldFallBackToStopAndWait_WhenHubRejectsPackage() {
+        FakeHub hub = new FakeHub();
+        hub.rejectedPackage = 2;
+        SpikeCommunicator communicator = new SpikeCommunicator(this.spike, hub);
+
+        Pair<Integer, String> result = communicator.handleUpload(new ByteArrayInputStream(this.program), this.program.length);
+        assertThat(result.getFirst(), is(2));
+        assertThat(hub.countRequests("program_execute"), is(0));
+
+        hub.answerDelay = 5L;
+        result = communicator.handleUpload(new ByteArrayInputStream(this.program), this.program.length);
+        assertThat(result.getFirst(), is(0));
+        assertThat(hub.getUploadedProgram(), is(this.program));
+        assertThat(hub.maxUnansweredPackages, is(1));
+    }
+
+    @Test
+    void handlePushResponse_ShouldUploadFromCache_WhenPipelinedUploadIsRejected() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/rest/download", exchange -> {
+            exchange.getRequestBody().close();
+            exchange.getResponseHeaders().add("Filename", "NepoProg.py");
+            exchange.sendResponseHeaders(200, this.program.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(this.program);
+            }
+        });
+        server.start();
+        try {
+            FakeHub hub = new FakeHub();
+            hub.rejectedPackage = 3;
+            SpikeConnector connector = new SpikeConnector(this.spike, robot -> new SpikeCommunicator(robot, hub));
+            connector.updateCustomServerAddress("localhost:" + server.getAddress().getPort());
+            connector.runLoopBody();
+
+            connector.handlePushResponse(new JSONObject().put(IConnector.KEY_CMD, IConnector.CMD_DOWNLOAD));
+
+            assertThat(hub.countRequests("start_write_program"), is(2));
+            assertThat(hub.countRequests("program_execute"), is(1));
+            assertThat(hub.getUploadedProgram(), is(this.program));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void close_ShouldCloseSerialPort() {
+        FakeHub hub = new FakeHub();
+        SpikeConnector connector = new SpikeConnector(this.spike, robot -> new SpikeCommunicator(robot, hub));
+        connector.runLoopBody();
+
+        connector.close();
+
+        assertThat(hub.closed, is(true));
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.hubThread.shutdownNow();
+    }
+
+    /**
+     * Answers the requests like a Spike hub, the answers are written to the receiver of the transport.
+     */
+    private final class FakeHub extends SerialTransport {
+        private final List<JSONObject> requests = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> held = new ArrayList<>();
+        private final ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+        private volatile SerialTransport.Receiver receiver = null;
+        private int packageCount = 0;
+        private int unansweredPackages = 0;
+
+        private int heldPackages = 1; // the number of packages that are answered together, the last one first
+        private int rejectedPackage = 0; // the number of the package that is answered with an error, counted over all uploads
+        private long answerDelay = 0L;
+        private volatile int maxUnansweredPackages = 0;
+        private volatile boolean closed = false;
+
+        FakeHub() {
+            super("ttyACM0", 115200);
+        }
+
+        @Override
+        public synchronized boolean open() {
+            return true;
+        }
+
+        @Override
+        public synchronized void close() {
+            this.closed = true;
+        }
+
+        @Override
+        public void setReceiver(SerialTransport.Receiver receiver) {
+            this.receiver = receiver;
+        }
+
+        @Override
+        public synchronized boolean write(byte[] data, int length) {
+            JSONObject request = new JSONObject(new String(data, 0, length, StandardCharsets.UTF_8).trim());
+            this.requests.add(request);
+            String id = request.getString("i");
+            switch ( request.getString("m") ) {
+                case "start_write_program":
+                    this.uploaded.reset();
+                    this.answer("{\"i\":\"" + id + "\",\"r\":{\"transferid\":\"T1\"}}");
+                    break;
+                case "write_package":
+                    assertThat(request.getJSONObject("p").getString("transferid"), is("T1"));
+                    byte[] content = Base64.getDecoder().decode(request.getJSONObject("p").getString("data"));
+                    this.uploaded.write(content, 0, content.length);
+                    if ( ++this.packageCount == this.rejectedPackage ) {
+                        this.answer("{\"i\":\"" + id + "\",\"e\":\"" + Base64.getEncoder().encodeToString("rejected".getBytes(StandardCharsets.UTF_8)) + "\"}");
+                        break;
+                    }
+                    this.maxUnansweredPackages = Math.max(this.maxUnansweredPackages, ++this.unansweredPackages);
+                    this.held.add(id);
+                    if ( (this.held.size() == this.heldPackages) || (this.uploaded.size() == SpikeUploadTests.this.program.length) ) {
+                        for ( int i = this.held.size() - 1; i >= 0; i-- ) {
+                            this.answerPackage(this.held.get(i));
+                        }
+                        this.held.clear();
+                    }
+                    break;
+                default:
+                    this.answer("{\"i\":\"" + id + "\",\"r\":null}");
+            }
+            return true;
+        }
+
+        private void answerPackage(String id) {
+            String answer = "{\"i\":\"" + id + "\",\"r\":{\"next_ptr\":0}}";
+            if ( this.answerDelay == 0L ) {
+                this.unansweredPackages--;
+                this.answer(answer);
+                return;
+            }
+            SpikeUploadTests.this.hubThread.schedule(() -> {
+                synchronized ( this ) {
+                    this.unansweredPackages--;
+                }
+                this.answer(answer);
+            }, this.answerDelay, TimeUnit.MILLISECONDS);
+        }
+
+        private void answer(String message) {
+            byte[] bytes = (message + "\r").getBytes(StandardCharsets.UTF_8);
+            this.receiver.receive(bytes, bytes.length);
+        }
+
+        synchronized byte[] getUploadedProgram() {
+            return this.uploaded.toByteArray();
+        }
+
+        int countRequests(String mode) {
+            synchronized ( this.requests ) {
+                return (int) this.requests.stream().filter(request -> request.getString("m").equals(mode)).count();
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package de.fhg.iais.roberta.connection.wireless;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+class HostnameResolverTests {
+
+    @Test
+    void getAddress_ShouldReturnCachedAddress_WhenTtlNotExpired() throws UnknownHostException {
+        InetAddress robotAddress = InetAddress.getByAddress("robotino.local", new byte[] { 10, 0, 0, 7 });
+        AtomicInteger lookups = new AtomicInteger();
+        List<Runnable> tasks = new ArrayList<>();
+        HostnameResolver resolver = new HostnameResolver(tasks::add, hostname -> {
+            lookups.incrementAndGet();
+            return robotAddress;
+        }, 60000L, 0L);
+
+        assertThat(resolver.getAddress("robotino.local"), is(nullValue()));
+        assertThat(resolver.getAddress("robotino.local"), is(nullValue()));
+        assertThat(tasks.size(), is(1)); // only one lookup while pending
+
+        tasks.get(0).run();
+        assertThat(resolver.getAddress("robotino.local"), is(robotAddress));
+        assertThat(resolver.getAddress("robotino.local"), is(robotAddress));
+        assertThat(lookups.get(), is(1));
+    }
+
+    @Test
+    void getAddress_ShouldLookUpAgain_WhenLookupFailed() {
+        AtomicInteger lookups = new AtomicInteger();
+        HostnameResolver resolver = new HostnameResolver(Runnable::run, hostname -> {
+            lookups.incrementAndGet();
+            throw new UnknownHostException(hostname);
+        }, 60000L, 0L);
+
+        assertThat(resolver.getAddress("robotino.local"), is(nullValue()));
+        assertThat(resolver.getAddress("robotino.local"), is(nullValue()));
+        assertThat(lookups.get(), is(2));
+    }
+}
@@ -0,0 +1,132 @@
+package de.fhg.iais.roberta.connection.wireless;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import de.fhg.iais.roberta.connection.IConnector;
+import de.fhg.iais.roberta.connection.IRobot;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+class WirelessConnectorTests {
+
+    private HttpServer server = null;
+    private final List<JSONObject> downloadRequests = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/rest/download", exchange -> {
+            this.downloadRequests.add(new JSONObject(IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8)));
+            byte[] program = "program".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Filename", "NepoProg.py");
+            exchange.sendResponseHeaders(200, program.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(program);
+            }
+        });
+        this.server.start();
+    }
+
+    @Test
+    void getProgram_ShouldSendCheckedFirmware_WhenFirmwareChangedAfterPush() throws IOException {
+        TestCommunicator communicator = new TestCommunicator();
+        TestConnector connector = new TestConnector(communicator);
+        connector.updateCustomServerAddress("localhost:" + this.server.getAddress().getPort());
+
+        JSONObject push = new JSONObject(new String(connector.createPushRequest(), StandardCharsets.UTF_8));
+        assertThat(push.getString("firmwareversion"), is(""));
+
+        communicator.firmwareVersion = "2-8";
+        connector.getProgram();
+
+        assertThat(this.downloadRequests, hasSize(1));
+        assertThat(this.downloadRequests.get(0).getString("firmwareversion"), is("2-8"));
+        assertThat(this.downloadRequests.get(0).getString(IConnector.KEY_TOKEN), is("TOKEN"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.server.stop(0);
+    }
+
+    private static class TestConnector extends AbstractWirelessConnector<IRobot> {
+        TestConnector(IWirelessCommunicator communicator) {
+            super(new TestRobot(), communicator);
+            this.token = "TOKEN";
+        }
+
+        @Override
+        protected void waitUpload() {
+        }
+
+        @Override
+        protected void waitStopProgram() {
+        }
+    }
+
+    private static class TestCommunicator implements IWirelessCommunicator {
+        private String firmwareVersion = "";
+
+        @Override
+        public void setPassword(String password) {
+        }
+
+        @Override
+        public JSONObject getDeviceInfo() {
+            JSONObject deviceInfo = new JSONObject();
+            deviceInfo.put("firmwarename", "Test");
+            deviceInfo.put("firmwareversion", this.firmwareVersion);
+            return deviceInfo;
+        }
+
+        @Override
+        public void stopProgram() {
+        }
+
+        @Override
+        public void uploadFile(byte[] binaryFile, String fileName) {
+        }
+
+        @Override
+        public String checkFirmwareVersion() {
+            return this.firmwareVersion;
+        }
+    }
+
+    private static class TestRobot implements IRobot {
+        @Override
+        public String getPrettyName() {
+            return "Test";
+        }
+
+        @Override
+        public String getName() {
+            return "test";
+        }
+
+        @Override
+        public ConnectionType getConnectionType() {
+            return ConnectionType.WIRELESS;
+        }
+
+        @Override
+        public IConnector<? extends IRobot> createConnector() {
+            return new TestConnector(new TestCommunicator());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package de.fhg.iais.roberta.connection.wireless;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import javax.jmdns.JmDNS;
+import javax.jmdns.ServiceEvent;
+import javax.jmdns.ServiceInfo;
+import javax.jmdns.impl.ServiceInfoImpl;
+
+import de.fhg.iais.roberta.connection.IRobot;
+import de.fhg.iais.roberta.connection.wireless.nao.Nao;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.isA;
+
+class mDnsDetectorTests {
+    private static final String NAO_TYPE = "_naoqi._tcp.local.";
+
+    @Test
+    void serviceResolved_ShouldAddRobotUntilRemoved_WhenNaoIsAnnounced() throws UnknownHostException {
+        mDnsDetector.Browser browser = new mDnsDetector.Browser(null, null);
+        InetAddress address = InetAddress.getByAddress(new byte[] { 10, 0, 0, 7 });
+
+        browser.serviceResolved(new TestServiceEvent(NAO_TYPE, "Nao", address));
+        assertThat(browser.getRobots(), contains(isA(Nao.class)));
+        IRobot nao = browser.getRobots().iterator().next();
+        assertThat(((Nao) nao).getAddress(), is(address));
+
+        browser.serviceRemoved(new TestServiceEvent(NAO_TYPE, "Nao", null));
+        assertThat(browser.getRobots(), is(empty()));
+    }
+
+    @Test
+    void serviceResolved_ShouldIgnoreService_WhenTypeIsUnknownOrAddressIsMissing() throws UnknownHostException {
+        mDnsDetector.Browser browser = new mDnsDetector.Browser(null, null);
+
+        browser.serviceResolved(new TestServiceEvent("_http._tcp.local.", "Printer", InetAddress.getByAddress(new byte[] { 10, 0, 0, 8 })));
+        browser.serviceResolved(new TestServiceEvent(NAO_TYPE, "Nao", null));
+
+        assertThat(browser.getRobots(), is(empty()));
+    }
+
+    private static final class TestServiceEvent extends ServiceEvent {
+        private final String type;
+        private final String name;
+        private final ServiceInfo info;
+
+        TestServiceEvent(String type, String name, InetAddress address) {
+            super(new Object());
+            this.type = type;
+            this.name = name;
+            this.info = new ServiceInfoImpl(type, name, "", 9559, 0, 0, false, "") {
+                @Override
+                public InetAddress[] getInetAddresses() {
+                    return (address == null) ? new InetAddress[0] : new InetAddress[] { address };
+                }
+            };
+        }
+
+        @Override
+        public JmDNS getDNS() {
+            return null;
+        }
+
+        @Override
+        public String getType() {
+            return this.type;
+        }
+
+        @Override
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public ServiceInfo getInfo() {
+            return this.info;
+        }
+    }
+}
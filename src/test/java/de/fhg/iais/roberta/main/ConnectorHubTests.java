@@ -0,0 +1,95 @@
+package de.fhg.iais.roberta.main;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import de.fhg.iais.roberta.connection.AutoConnector;
+import de.fhg.iais.roberta.connection.IConnector;
+import de.fhg.iais.roberta.connection.IRobot;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+
+class ConnectorHubTests {
+
+    private static final long ROBOT_TIMEOUT = 500L;
+
+    private ScheduledExecutorService executorService = null;
+
+    @BeforeEach
+    void setUp() {
+        this.executorService = Executors.newScheduledThreadPool(2);
+    }
+
+    @Test
+    void update_ShouldRunConnectorPerRobot_WhenRobotsAreDetected() {
+        ConnectorHub hub = new ConnectorHub(this.executorService, this.executorService, ROBOT_TIMEOUT);
+        IRobot first = new TestRobot("first");
+        IRobot second = new TestRobot("second");
+
+        hub.update(Arrays.asList(first, second));
+        hub.update(Collections.singletonList(first));
+
+        List<IConnector<?>> connectors = hub.getConnectors();
+        assertThat(connectors, hasSize(2));
+        assertThat(Arrays.asList(connectors.get(0).getRobot(), connectors.get(1).getRobot()), containsInAnyOrder(first, second));
+        hub.close();
+    }
+
+    @Test
+    void update_ShouldCloseConnector_WhenRobotIsNoLongerDetected() throws InterruptedException {
+        ConnectorHub hub = new ConnectorHub(this.executorService, this.executorService, ROBOT_TIMEOUT);
+        IRobot first = new TestRobot("first");
+        IRobot second = new TestRobot("second");
+
+        hub.update(Arrays.asList(first, second));
+        Thread.sleep(ROBOT_TIMEOUT * 2);
+        hub.update(Collections.singletonList(first));
+
+        assertThat(hub.getConnectors(), hasSize(1));
+        hub.close();
+        assertThat(hub.getConnectors(), empty());
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.executorService.shutdownNow();
+    }
+
+    private static class TestRobot implements IRobot {
+        private final String name;
+
+        TestRobot(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getPrettyName() {
+            return this.name;
+        }
+
+        @Override
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public ConnectionType getConnectionType() {
+            return ConnectionType.WIRED;
+        }
+
+        @Override
+        public IConnector<? extends IRobot> createConnector() {
+            return new AutoConnector(this);
+        }
+    }
+}
@@ -7,6 +7,9 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import de.fhg.iais.roberta.connection.IDetector;
 import de.fhg.iais.roberta.connection.IRobot;
@@ -26,7 +29,6 @@ import static org.hamcrest.Matchers.iterableWithSize;
 import static org.hamcrest.Matchers.notNullValue;
 
 class DetectorTests {
-
     @Test
     void getDetectedRobots_ShouldOnlyReturnDetectedRobots_WhenRun() {
         IDetector arduDDetector = new TestArduinoDetectedDetector();
@@ -72,6 +74,69 @@ class DetectorTests {
         assertThat(detectedRobots, empty());
     }
 
+    @Test
+    void getDetectedRobots_ShouldReturnEarlyResults_WhenOtherDetectorHangs() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        IDetector hangingDetector = () -> {
+            try {
+                release.await();
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            return Collections.singletonList(new Ev3("EV3"));
+        };
+        RobotDetectorHelper robotDetectorHelper = new RobotDetectorHelper(Arrays.asList(new TestArduinoDetectedDetector(), hangingDetector));
+
+        try {
+            List<IRobot> detectedRobots = robotDetectorHelper.getDetectedRobots();
+            for ( int i = 0; (i < 100) && detectedRobots.isEmpty(); i++ ) {
+                Thread.sleep(10L);
+                detectedRobots = robotDetectorHelper.getDetectedRobots();
+            }
+
+            assertThat(detectedRobots, contains(isA(Arduino.class)));
+            assertThat(robotDetectorHelper.allDetectorsRanOnce(), is(false));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void addChangeListener_ShouldRunDetectorAtOnce_WhenDetectorReportsChange() throws InterruptedException {
+        ChangingDetector detector = new ChangingDetector();
+        RobotDetectorHelper robotDetectorHelper = new RobotDetectorHelper(Collections.singletonList(detector));
+        assertThat(detector.runs.tryAcquire(1000L, TimeUnit.MILLISECONDS), is(true));
+
+        detector.robots = Collections.singletonList(new Arduino(WiredRobotType.UNO, "1234"));
+        detector.listener.run();
+
+        assertThat(detector.runs.tryAcquire(1000L, TimeUnit.MILLISECONDS), is(true));
+        List<IRobot> detectedRobots = robotDetectorHelper.getDetectedRobots();
+        for ( int i = 0; (i < 100) && detectedRobots.isEmpty(); i++ ) {
+            Thread.sleep(10L);
+            detectedRobots = robotDetectorHelper.getDetectedRobots();
+        }
+        assertThat(detectedRobots, contains(isA(Arduino.class)));
+    }
+
+    @Test
+    void awaitChange_ShouldReturnAtOnce_WhenDetectedRobotsChange() throws InterruptedException {
+        ChangingDetector detector = new ChangingDetector();
+        RobotDetectorHelper robotDetectorHelper = new RobotDetectorHelper(Collections.singletonList(detector));
+        while ( !robotDetectorHelper.allDetectorsRanOnce() ) {
+            Thread.sleep(10L);
+        }
+        assertThat(robotDetectorHelper.getDetectedRobots(), empty());
+
+        detector.robots = Collections.singletonList(new Arduino(WiredRobotType.UNO, "1234"));
+        detector.listener.run();
+        long start = System.currentTimeMillis();
+        robotDetectorHelper.awaitChange(5000L);
+
+        assertThat(System.currentTimeMillis() - start < 5000L, is(true));
+        assertThat(robotDetectorHelper.getDetectedRobots(), contains(isA(Arduino.class)));
+    }
+
     @Test
     void getSelectedRobot_ShouldReturnSelectedRobot_WhenRobotIsSelected() {
         RobotDetectorHelper robotDetectorHelper = new RobotDetectorHelper(Arrays.asList(new TestArduinoDetectedDetector(), new TestEv3DetectedDetector()));
@@ -105,6 +170,24 @@ class DetectorTests {
         }
     }
 
+    private static class ChangingDetector implements IDetector {
+        private final Semaphore runs = new Semaphore(0);
+        private volatile List<IRobot> robots = Collections.emptyList();
+        private volatile Runnable listener = null;
+
+        @Override
+        public List<IRobot> detectRobots() {
+            List<IRobot> result = this.robots;
+            this.runs.release();
+            return result;
+        }
+
+        @Override
+        public void addChangeListener(Runnable listener) {
+            this.listener = listener;
+        }
+    }
+
     private static class TestNoRobotDetectedDetector implements IDetector {
         @Override
         public List<IRobot> detectRobots() {
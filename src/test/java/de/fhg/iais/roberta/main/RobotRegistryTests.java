@@ -0,0 +1,58 @@
+package de.fhg.iais.roberta.main;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import de.fhg.iais.roberta.connection.IRobot;
+import de.fhg.iais.roberta.connection.wired.WiredRobotType;
+import de.fhg.iais.roberta.connection.wired.arduino.Arduino;
+import de.fhg.iais.roberta.connection.wired.ev3.Ev3;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.isA;
+
+class RobotRegistryTests {
+    private static final long ROBOT_TIMEOUT = 200L;
+
+    @Test
+    void update_ShouldOnlyReturnChanges_WhenRobotsAreDetectedAgain() {
+        RobotRegistry registry = new RobotRegistry(ROBOT_TIMEOUT);
+        IRobot arduino = new Arduino(WiredRobotType.UNO, "1234");
+        IRobot ev3 = new Ev3("EV3");
+
+        RobotRegistry.Delta delta = registry.update(Arrays.asList(arduino, ev3));
+        assertThat(delta.getAdded(), contains(arduino, ev3));
+        assertThat(delta.getRemoved(), empty());
+
+        delta = registry.update(Arrays.asList(new Arduino(WiredRobotType.UNO, "1234"), ev3));
+        assertThat(delta.isEmpty(), is(true));
+        assertThat(registry.getRobots(), contains(arduino, ev3));
+
+        delta = registry.update(Collections.singletonList(new Ev3("EV3 renamed")));
+        assertThat(delta.getAdded(), contains(isA(Ev3.class)));
+        assertThat(delta.getChanged(), empty());
+    }
+
+    @Test
+    void update_ShouldRemoveRobot_WhenNotDetectedWithinTimeout() throws InterruptedException {
+        RobotRegistry registry = new RobotRegistry(ROBOT_TIMEOUT);
+        IRobot arduino = new Arduino(WiredRobotType.UNO, "1234");
+        IRobot ev3 = new Ev3("EV3");
+
+        registry.update(Arrays.asList(arduino, ev3));
+        assertThat(registry.update(Collections.singletonList(ev3)).isEmpty(), is(true));
+
+        Thread.sleep(ROBOT_TIMEOUT / 2);
+        registry.update(Collections.singletonList(ev3));
+        Thread.sleep(ROBOT_TIMEOUT);
+        RobotRegistry.Delta delta = registry.update(Collections.singletonList(ev3));
+
+        assertThat(delta.getRemoved(), contains(arduino));
+        assertThat(registry.getRobots(), contains(ev3));
+    }
+}
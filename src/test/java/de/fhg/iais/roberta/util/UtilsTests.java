@@ -1,17 +1,34 @@
 package de.fhg.iais.roberta.util;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import de.fhg.iais.roberta.connection.wired.WiredRobotType;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 
 class UtilsTests {
     @Test
@@ -49,4 +66,101 @@ class UtilsTests {
         String artifactId = instance.getProperty("artifactId");
         assertThat(artifactId, is("OpenRobertaConnector"));
     }
+
+    @Test
+    void storeProgram_ShouldReturnEqualPrograms_WhenContentIsEqual(@TempDir Path tempDir) throws IOException {
+        ProgramCache cache = new ProgramCache(tempDir, 1024);
+
+        ProgramCache.Program first = cache.store(new ByteArrayInputStream("program".getBytes(StandardCharsets.UTF_8)), "NepoProg.hex", "\"1\"");
+        ProgramCache.Program second = cache.store(new ByteArrayInputStream("program".getBytes(StandardCharsets.UTF_8)), "NepoProg.hex", null);
+        ProgramCache.Program other = cache.store(new ByteArrayInputStream("changed".getBytes(StandardCharsets.UTF_8)), "NepoProg.hex", null);
+
+        assertThat(second, is(first));
+        assertThat(second.getPath(), is(first.getPath()));
+        assertThat(other.equals(first), is(false));
+        assertThat(cache.get("\"1\""), is(first));
+    }
+
+    @Test
+    void storeProgram_ShouldCacheWholeContent_WhenReaderStopsEarly(@TempDir Path tempDir) throws IOException {
+        ProgramCache cache = new ProgramCache(tempDir, 1024);
+        byte[] content = "program".getBytes(StandardCharsets.UTF_8);
+
+        Pair<ProgramCache.Program, String> stored = cache.store(new ByteArrayInputStream(content), "NepoProg.py", null, programContent -> {
+            byte[] start = new byte[3];
+            return new String(start, 0, programContent.read(start), StandardCharsets.UTF_8);
+        });
+
+        assertThat(stored.getSecond(), is("pro"));
+        assertThat(Files.readAllBytes(stored.getFirst().getPath()), is(content));
+        assertThat(cache.store(new ByteArrayInputStream(content), "NepoProg.py", null), is(stored.getFirst()));
+    }
+
+    @Test
+    void storeProgram_ShouldRemoveLeastRecentlyUsedProgram_WhenCacheIsFull(@TempDir Path tempDir) throws IOException {
+        ProgramCache cache = new ProgramCache(tempDir, 10);
+
+        ProgramCache.Program old = cache.store(new ByteArrayInputStream("program1".getBytes(StandardCharsets.UTF_8)), "NepoProg.hex", "\"1\"");
+        Files.setLastModifiedTime(old.getPath().getParent(), FileTime.fromMillis(0L));
+        ProgramCache.Program current = cache.store(new ByteArrayInputStream("program2".getBytes(StandardCharsets.UTF_8)), "NepoProg.hex", null);
+
+        assertThat(Files.exists(old.getPath()), is(false));
+        assertThat(Files.exists(current.getPath()), is(true));
+        assertThat(cache.get("\"1\""), is(nullValue()));
+    }
+
+    @Test
+    void storeProgram_ShouldKeepPinnedProgram_WhenCacheIsFull(@TempDir Path tempDir) throws IOException {
+        ProgramCache cache = new ProgramCache(tempDir, 10);
+
+        ProgramCache.Program flashed = cache.store(new ByteArrayInputStream("program1".getBytes(StandardCharsets.UTF_8)), "NepoProg.hex", null);
+        cache.pin(flashed);
+        Files.setLastModifiedTime(flashed.getPath().getParent(), FileTime.fromMillis(0L));
+        cache.store(new ByteArrayInputStream("program2".getBytes(StandardCharsets.UTF_8)), "NepoProg.hex", null);
+        assertThat(Files.exists(flashed.getPath()), is(true));
+
+        cache.unpin(flashed);
+        cache.store(new ByteArrayInputStream("program3".getBytes(StandardCharsets.UTF_8)), "NepoProg.hex", null);
+        assertThat(Files.exists(flashed.getPath()), is(false));
+    }
+
+    @Test
+    void unzip_ShouldExtractNestedEntries_WhenStreamed(@TempDir Path tempDir) throws IOException {
+        byte[] zip = createZip("roberta/hal.py");
+
+        ZipHelper.unzip(new ByteArrayInputStream(zip), tempDir);
+
+        assertThat(new String(Files.readAllBytes(tempDir.resolve("roberta/hal.py")), StandardCharsets.UTF_8), is("content"));
+    }
+
+    @Test
+    void unzip_ShouldFail_WhenEntryIsOutsideOfDirectory(@TempDir Path tempDir) throws IOException {
+        byte[] zip = createZip("../evil.py");
+
+        assertThrows(IOException.class, () -> ZipHelper.unzip(new ByteArrayInputStream(zip), tempDir.resolve("out")));
+        assertThat(Files.exists(tempDir.resolve("evil.py")), is(false));
+    }
+
+    private static byte[] createZip(String entryName) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bos)) {
+            zos.putNextEntry(new ZipEntry(entryName));
+            zos.write("content".getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+        return bos.toByteArray();
+    }
+
+    @Test
+    void getTable_ShouldFindRobot_WhenIdsDifferInCase() {
+        Map<SerialDevice, WiredRobotType> robots = new HashMap<>();
+        robots.put(new SerialDevice("2A03", "0043", "", ""), WiredRobotType.UNO);
+        robots.put(new SerialDevice("0d28", "0204", "", ""), WiredRobotType.MICROBIT);
+        WiredRobotIdTable table = new WiredRobotIdTable(robots, Collections.emptyMap());
+
+        assertThat(table.get(new SerialDevice("2a03", "0043", "COM1", "")), is(WiredRobotType.UNO));
+        assertThat(table.get(new SerialDevice("0D28", "0204", "COM2", "")), is(WiredRobotType.MICROBIT));
+        assertThat(table.get(new SerialDevice("0d28", "0205", "COM3", "")), is(nullValue()));
+        assertThat(table.get(new SerialDevice("xyz", "0204", "COM4", "")), is(nullValue()));
+    }
 }